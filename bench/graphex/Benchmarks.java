@@ -0,0 +1,226 @@
+package graphex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Benchmarks for the three expensive parts of the program, so a change can be checked for whether it helped or hurt.
+ * The parse group times building the parser, nfa and indexed nfa for patterns of growing size.  The subset group times
+ * the subset construction on the (a|b)*a(a|b)^n family, whose dfa doubles in size with every step of n, once from the
+ * Thompson nfa and once from the Glushkov position automaton, and puts the number of nfa states of each in the name.  The match group
+ * times every engine scanning a generated corpus of a given size, where a given fraction of the lines match.  Every
+ * benchmark is warmed up first, then timed over a number of iterations that each run long enough to be measured well, and
+ * the median is reported with the fastest and slowest iteration so the spread can be seen.  The corpora come from a fixed
+ * seed so runs on different commits see the same input.  Run it with
+ * java graphex.Benchmarks [--group=parse|subset|match|all] [--corpus-size=BYTES] [--density=FRACTION] [--warmup=N] [--iterations=N]
+ * @author Ryan Bertsche
+ */
+public class Benchmarks
+{
+    //Shortest time one timed iteration should take, so the timer resolution does not matter
+    private static final long MIN_ITERATION_NANOS = 200_000_000L;
+
+    //Seed for the generated corpora
+    private static final long SEED = 42;
+
+    //Results are added into this so the JIT can not throw away the work being timed
+    private static volatile long sink;
+
+    //Number of warmup and timed iterations
+    private static int warmup = 5;
+    private static int iterations = 10;
+
+    /**
+     * Runs the chosen benchmark groups and prints a line of results for every benchmark
+     * @param args the options described in the class comment
+     */
+    public static void main(String args[])
+    {
+        String group = "all";
+        long corpusSize = 16L << 20;
+        double density = 0.01;
+        for(String arg : args)
+        {
+            if(arg.startsWith("--group="))
+                group = arg.substring("--group=".length());
+            else if(arg.startsWith("--corpus-size="))
+                corpusSize = Long.parseLong(arg.substring("--corpus-size=".length()));
+            else if(arg.startsWith("--density="))
+                density = Double.parseDouble(arg.substring("--density=".length()));
+            else if(arg.startsWith("--warmup="))
+                warmup = Integer.parseInt(arg.substring("--warmup=".length()));
+            else if(arg.startsWith("--iterations="))
+                iterations = Integer.parseInt(arg.substring("--iterations=".length()));
+            else
+                throw new Error("Unknown option " + arg);
+        }
+        if(corpusSize > Integer.MAX_VALUE)
+            throw new Error("The corpus must fit in one buffer.");
+
+        System.out.printf("%-40s %14s %14s %14s%n", "benchmark", "median", "min", "max");
+        if(group.equals("parse") || group.equals("all"))
+            parseGroup();
+        if(group.equals("subset") || group.equals("all"))
+            subsetGroup();
+        if(group.equals("match") || group.equals("all"))
+            matchGroup((int) corpusSize, density);
+    }
+
+    /**
+     * Times parsing patterns of growing size into the nfa and indexed nfa, without building the dfa
+     */
+    private static void parseGroup()
+    {
+        CompileOptions options = new CompileOptions();
+        options.setBuildDfa(false);
+        for(int size : new int[]{16, 64, 256, 1024})
+        {
+            StringBuilder pattern = new StringBuilder();
+            for(int i = 0; i < size; i++)
+                pattern.append(i % 2 == 0 ? "(ab|cd)*" : "e");
+            String regex = pattern.toString();
+            time("parse/terms=" + size, () -> new Parser(regex, options).getIndexedNfa().getStateCount(), 1, "us/op");
+        }
+    }
+
+    /**
+     * Times the subset construction on (a|b)*a(a|b)^n, which makes 2^(n+1) dfa states, from both nfa constructions
+     */
+    private static void subsetGroup()
+    {
+        for(boolean glushkov : new boolean[]{false, true})
+        {
+            CompileOptions options = new CompileOptions();
+            options.setGlushkov(glushkov);
+            String construction = glushkov ? "glushkov" : "thompson";
+            for(int n : new int[]{4, 8, 12})
+            {
+                StringBuilder pattern = new StringBuilder("(a|b)*a");
+                for(int i = 0; i < n; i++)
+                    pattern.append("(a|b)");
+                String regex = pattern.toString();
+                int nfaStates = new Parser(regex, options).getIndexedNfa().getStateCount();
+                time("subset/" + construction + "/n=" + n + " nfa=" + nfaStates, () -> new Parser(regex, options).getDfaTree().getAllNodes().size(), 1, "us/op");
+            }
+        }
+    }
+
+    /**
+     * Times every engine scanning a corpus of random lines, where the given fraction of the lines contain "Ryan" and so
+     * match (a|b|c|d)*Ryan(a|b|c|d)*.  Throughput is reported in megabytes per second
+     * @param corpusSize number of bytes in the corpus
+     * @param density fraction of the lines that match
+     */
+    private static void matchGroup(int corpusSize, double density)
+    {
+        ByteBuffer corpus = makeCorpus(corpusSize, density);
+        String regex = "(a|b|c|d)*Ryan(a|b|c|d)*";
+        CompileOptions options = new CompileOptions();
+        Parser parser = new Parser(regex, options);
+        CompiledDfa dfa = new CompiledDfa(parser.getDfaTree());
+        IndexedNfa nfa = parser.getIndexedNfa();
+        LiteralPrefilter prefilter = parser.getPrefilter();
+
+        timeScan("match/dfa", corpus, () -> dfa);
+        timeScan("match/dfa+prefilter", corpus, () -> new PrefilteredMatcher(dfa, prefilter));
+        timeScan("match/lazy", corpus, () -> new LazyDfa(nfa));
+        timeScan("match/nfa", corpus, () -> new NfaSimulator(nfa));
+    }
+
+    /**
+     * Times one engine scanning the whole corpus.  The matcher is made once, outside of the timing
+     * @param name name of the benchmark
+     * @param corpus the input
+     * @param matchers makes the matcher
+     */
+    private static void timeScan(String name, ByteBuffer corpus, Supplier<LineMatcher> matchers)
+    {
+        LineMatcher matcher = matchers.get();
+        long[] matched = new long[1];
+        LineHandler counter = (buf, start, end) -> matched[0]++;
+        double megabytes = corpus.capacity() / (double) (1 << 20);
+        time(name, () -> {
+            matcher.scanLines(corpus, 0, corpus.capacity(), true, counter);
+            return matched[0];
+        }, megabytes, "MB/s");
+    }
+
+    /**
+     * Makes a corpus of lines of 20 to 80 random letters from a to d, where about the given fraction of the lines have
+     * "Ryan" put in the middle
+     * @param size number of bytes in the corpus
+     * @param density fraction of the lines that match
+     * @return direct buffer holding the corpus, the same way a mapped file would be held
+     */
+    private static ByteBuffer makeCorpus(int size, double density)
+    {
+        Random random = new Random(SEED);
+        ByteBuffer corpus = ByteBuffer.allocateDirect(size);
+        byte[] marker = "Ryan".getBytes();
+        while(corpus.remaining() > 0)
+        {
+            int length = 20 + random.nextInt(61);
+            boolean matching = random.nextDouble() < density;
+            for(int i = 0; i < length && corpus.remaining() > 1; i++)
+            {
+                if(matching && i == length / 2 && corpus.remaining() > marker.length + 1)
+                    corpus.put(marker);
+                corpus.put((byte) ('a' + random.nextInt(4)));
+            }
+            corpus.put((byte) '\n');
+        }
+        corpus.clear();
+        return corpus;
+    }
+
+    /**
+     * Warms up and times one benchmark, then prints the median, fastest and slowest iteration.  Each iteration runs the
+     * operation as many times as it takes to reach the minimum iteration time, worked out once before the warmup
+     * @param name name of the benchmark
+     * @param operation the work being timed, which returns a value so it can not be optimized away
+     * @param units amount of work in one run of the operation, in the unit being reported
+     * @param unit "us/op" to report microseconds per operation, or a rate like "MB/s" to report units per second
+     */
+    private static void time(String name, Supplier<Object> operation, double units, String unit)
+    {
+        //Find how many runs make one iteration long enough
+        long batch = 1;
+        while(true)
+        {
+            long start = System.nanoTime();
+            runBatch(operation, batch);
+            if(System.nanoTime() - start >= MIN_ITERATION_NANOS || batch >= 1L << 30)
+                break;
+            batch *= 2;
+        }
+
+        for(int i = 0; i < warmup; i++)
+            runBatch(operation, batch);
+        double[] results = new double[iterations];
+        for(int i = 0; i < iterations; i++)
+        {
+            long start = System.nanoTime();
+            runBatch(operation, batch);
+            double nanosPerRun = (System.nanoTime() - start) / (double) batch;
+            results[i] = unit.equals("us/op") ? nanosPerRun / 1000.0 : units / (nanosPerRun / 1e9);
+        }
+        Arrays.sort(results);
+        double median = iterations % 2 == 1 ? results[iterations / 2] : (results[iterations / 2 - 1] + results[iterations / 2]) / 2;
+        System.out.printf("%-40s %14.2f %14.2f %14.2f %s%n", name, median, results[0], results[iterations - 1], unit);
+    }
+
+    /**
+     * Runs the operation a number of times and feeds the results to the sink
+     * @param operation the work being timed
+     * @param batch number of times to run it
+     */
+    private static void runBatch(Supplier<Object> operation, long batch)
+    {
+        long hash = 0;
+        for(long i = 0; i < batch; i++)
+            hash += operation.get().hashCode();
+        sink += hash;
+    }
+}
@@ -0,0 +1,181 @@
+package graphex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This is a set of byte values kept as sorted ranges, which is the label of a transition made from a character class.
+ * A class like [a-z0-9] is two ranges instead of 36 characters, so it is one transition in the automata instead of one
+ * transition for every character.  The ranges never overlap or touch, and are in increasing order.  Nothing in it ever
+ * changes once made
+ * @author Ryan Bertsche
+ */
+public final class ByteRanges
+{
+    //Number of possible byte values
+    private static final int BYTE_VALUES = 256;
+
+    //First and last byte of every range, both included
+    private final int[] lows;
+    private final int[] highs;
+
+    /**
+     * Constructor used by the factory methods, the ranges must already be sorted and apart
+     * @param lows first byte of every range
+     * @param highs last byte of every range
+     */
+    private ByteRanges(int[] lows, int[] highs)
+    {
+        this.lows = lows;
+        this.highs = highs;
+    }
+
+    /**
+     * Makes the set of a single range of bytes
+     * @param low first byte of the range
+     * @param high last byte of the range, not below low
+     * @return set of the bytes from low to high
+     */
+    public static ByteRanges of(int low, int high)
+    {
+        return of(List.of(new int[]{low, high}));
+    }
+
+    /**
+     * Makes the set of a list of ranges, which may be in any order and may overlap
+     * @param ranges pairs of first and last byte
+     * @return set of every byte in any of the ranges
+     */
+    public static ByteRanges of(List<int[]> ranges)
+    {
+        ArrayList<int[]> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingInt((int[] r) -> r[0]));
+        int[] lows = new int[sorted.size()];
+        int[] highs = new int[sorted.size()];
+        int count = 0;
+        for(int[] r : sorted)
+        {
+            if(r[0] < 0 || r[1] >= BYTE_VALUES || r[1] < r[0])
+                throw new Error("Invalid byte range " + r[0] + "-" + r[1]);
+            //A range that overlaps or touches the one before it is merged into it
+            if(count > 0 && r[0] <= highs[count - 1] + 1)
+                highs[count - 1] = Math.max(highs[count - 1], r[1]);
+            else
+            {
+                lows[count] = r[0];
+                highs[count] = r[1];
+                count++;
+            }
+        }
+        return new ByteRanges(Arrays.copyOf(lows, count), Arrays.copyOf(highs, count));
+    }
+
+    /**
+     * Getter for the number of ranges
+     * @return number of ranges in the set
+     */
+    public int getRangeCount()
+    {
+        return lows.length;
+    }
+
+    /**
+     * Getter for the first byte of a range
+     * @param i index of the range
+     * @return first byte of the range
+     */
+    public int getLow(int i)
+    {
+        return lows[i];
+    }
+
+    /**
+     * Getter for the last byte of a range
+     * @param i index of the range
+     * @return last byte of the range, which is in it
+     */
+    public int getHigh(int i)
+    {
+        return highs[i];
+    }
+
+    /**
+     * Checks if a byte is in the set
+     * @param b the byte value, 0 to 255
+     * @return true if some range holds the byte
+     */
+    public boolean contains(int b)
+    {
+        int i = Arrays.binarySearch(lows, b);
+        if(i >= 0)
+            return true;
+        i = -i - 2;
+        return i >= 0 && b <= highs[i];
+    }
+
+    /**
+     * Sets the bit of every byte in the set
+     * @param set bitset the bytes are added to
+     */
+    public void addTo(BitSet set)
+    {
+        for(int i = 0; i < lows.length; i++)
+            set.set(lows[i], highs[i] + 1);
+    }
+
+    /**
+     * Sets are equal if they hold the same bytes
+     * @param o the other object
+     * @return true if the sets are equal
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if(!(o instanceof ByteRanges))
+            return false;
+        ByteRanges other = (ByteRanges) o;
+        return Arrays.equals(lows, other.lows) && Arrays.equals(highs, other.highs);
+    }
+
+    /**
+     * Hash code that agrees with equals
+     * @return hash of the ranges
+     */
+    @Override
+    public int hashCode()
+    {
+        return 31 * Arrays.hashCode(lows) + Arrays.hashCode(highs);
+    }
+
+    /**
+     * Writes the set the way a character class is written, like [a-z0-9], with bytes that are not printable written in hex
+     * @return the set as a class
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder text = new StringBuilder("[");
+        for(int i = 0; i < lows.length; i++)
+        {
+            text.append(byteText(lows[i]));
+            if(highs[i] != lows[i])
+                text.append('-').append(byteText(highs[i]));
+        }
+        return text.append(']').toString();
+    }
+
+    /**
+     * Writes one byte of the set
+     * @param b the byte value
+     * @return the byte as a character if it is printable ASCII, otherwise as \xHH
+     */
+    private static String byteText(int b)
+    {
+        if(b > ' ' && b < 0x7F && b != '\\' && b != ']' && b != '-' && b != '"')
+            return String.valueOf((char) b);
+        return String.format("\\x%02X", b);
+    }
+}
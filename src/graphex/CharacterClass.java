@@ -0,0 +1,248 @@
+package graphex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class holds the characters of a bracket class, the dot or a class escape like \d while the regex is parsed, as
+ * ranges of code points, and turns them into the regex subtree that matches them.  The automata run over the UTF-8 bytes
+ * of the input, so every range of code points is cut into pieces whose UTF-8 encodings differ only in the bytes that run
+ * over full ranges, and each piece becomes a sequence of byte ranges.  All the ASCII characters end up in one CLASS
+ * node, and each longer encoding is a concatenation of CLASS nodes, one per byte.  A class of ASCII characters, which is
+ * most of them, is a single CLASS node and so a single transition
+ * @author Ryan Bertsche
+ */
+public class CharacterClass
+{
+    //Largest code point
+    private static final int MAX_CODE_POINT = 0x10FFFF;
+
+    //The surrogate code points, which have no UTF-8 encoding and are left out of every class
+    private static final int MIN_SURROGATE = 0xD800;
+    private static final int MAX_SURROGATE = 0xDFFF;
+
+    //Largest code point that is encoded in each number of bytes
+    private static final int[] MAX_OF_LENGTH = {0x7F, 0x7FF, 0xFFFF};
+
+    //The ranges of code points in the class, as pairs of first and last, in the order they were added
+    private final ArrayList<int[]> ranges;
+
+    /**
+     * Constructor for an empty class
+     */
+    public CharacterClass()
+    {
+        ranges = new ArrayList<>();
+    }
+
+    /**
+     * Adds a range of characters to the class
+     * @param low first code point of the range
+     * @param high last code point of the range
+     */
+    public void add(int low, int high)
+    {
+        if(high < low)
+            throw new Error("Invalid Regex, character range out of order");
+        ranges.add(new int[]{low, high});
+    }
+
+    /**
+     * Adds every character of another class to this one
+     * @param other the other class
+     */
+    public void addAll(CharacterClass other)
+    {
+        ranges.addAll(other.ranges);
+    }
+
+    /**
+     * Makes the class of every character that is not in this one
+     * @return the complement of this class
+     */
+    public CharacterClass negate()
+    {
+        CharacterClass complement = new CharacterClass();
+        int next = 0;
+        for(int[] r : normalized())
+        {
+            if(r[0] > next)
+                complement.add(next, r[0] - 1);
+            next = r[1] + 1;
+        }
+        if(next <= MAX_CODE_POINT)
+            complement.add(next, MAX_CODE_POINT);
+        return complement;
+    }
+
+    /**
+     * Makes the class for the dot, which is every character except the line breaks
+     * @return class of any character
+     */
+    public static CharacterClass any()
+    {
+        CharacterClass lineBreaks = new CharacterClass();
+        lineBreaks.add('\n', '\n');
+        lineBreaks.add('\r', '\r');
+        return lineBreaks.negate();
+    }
+
+    /**
+     * Makes the class for a class escape, \d for digits, \w for word characters, \s for white space, and the upper case
+     * letters for everything but those
+     * @param c the character after the backslash
+     * @return the class, or null if the escape is not a class escape
+     */
+    public static CharacterClass forEscape(char c)
+    {
+        CharacterClass escaped = new CharacterClass();
+        switch(Character.toLowerCase(c))
+        {
+            case 'd':
+                escaped.add('0', '9');
+                break;
+            case 'w':
+                escaped.add('0', '9');
+                escaped.add('A', 'Z');
+                escaped.add('a', 'z');
+                escaped.add('_', '_');
+                break;
+            case 's':
+                escaped.add(' ', ' ');
+                escaped.add('\t', '\r');
+                break;
+            default:
+                return null;
+        }
+        return Character.isUpperCase(c) ? escaped.negate() : escaped;
+    }
+
+    /**
+     * Makes the regex subtree that matches one character of the class, as the bytes of its UTF-8 encoding
+     * @return CLASS node for a class of ASCII characters, otherwise a union of byte sequences
+     */
+    public RegexNode toRegexNode()
+    {
+        ArrayList<int[][]> sequences = new ArrayList<>();
+        for(int[] r : normalized())
+            split(r[0], r[1], sequences);
+
+        ArrayList<int[]> singleBytes = new ArrayList<>();
+        ArrayList<RegexNode> options = new ArrayList<>();
+        for(int[][] sequence : sequences)
+        {
+            if(sequence.length == 1)
+            {
+                singleBytes.add(sequence[0]);
+                continue;
+            }
+            ArrayList<RegexNode> bytes = new ArrayList<>();
+            for(int[] byteRange : sequence)
+                bytes.add(RegexNode.byteClass(ByteRanges.of(byteRange[0], byteRange[1])));
+            options.add(RegexNode.concat(bytes));
+        }
+        //The ASCII characters go first, and an empty class is a CLASS node with no bytes, which never matches
+        if(!singleBytes.isEmpty() || options.isEmpty())
+            options.add(0, RegexNode.byteClass(ByteRanges.of(singleBytes)));
+        return RegexNode.union(options);
+    }
+
+    /**
+     * Sorts the ranges, merges the ones that overlap or touch, and takes the surrogates out
+     * @return sorted list of ranges that are apart
+     */
+    private List<int[]> normalized()
+    {
+        ArrayList<int[]> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingInt((int[] r) -> r[0]));
+        ArrayList<int[]> merged = new ArrayList<>();
+        for(int[] r : sorted)
+        {
+            int low = Math.max(r[0], 0);
+            int high = Math.min(r[1], MAX_CODE_POINT);
+            if(low > high)
+                continue;
+            int[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if(last != null && low <= last[1] + 1)
+                last[1] = Math.max(last[1], high);
+            else
+                merged.add(new int[]{low, high});
+        }
+        ArrayList<int[]> result = new ArrayList<>();
+        for(int[] r : merged)
+        {
+            if(r[1] < MIN_SURROGATE || r[0] > MAX_SURROGATE)
+                result.add(r);
+            else
+            {
+                if(r[0] < MIN_SURROGATE)
+                    result.add(new int[]{r[0], MIN_SURROGATE - 1});
+                if(r[1] > MAX_SURROGATE)
+                    result.add(new int[]{MAX_SURROGATE + 1, r[1]});
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Cuts a range of code points into pieces that are each one sequence of byte ranges, and adds the sequences to the
+     * list.  A range is first cut where the length of the encoding changes.  Then, from the last byte up, if the two ends
+     * differ in the bytes before some position, the range is cut so that the part that does not cover every value of the
+     * bytes after that position is split off.  What is left has every byte after the first one that differs running over
+     * all of its values, so it is exactly the sequence of ranges from the encoding of its low end to that of its high end.
+     * The cuts are never more than a few deep, since each one lines up one more byte
+     * @param low first code point of the range
+     * @param high last code point of the range
+     * @param sequences list the byte range sequences are added to, each one an array of pairs of first and last byte
+     */
+    private static void split(int low, int high, List<int[][]> sequences)
+    {
+        for(int max : MAX_OF_LENGTH)
+        {
+            if(low <= max && high > max)
+            {
+                split(low, max, sequences);
+                split(max + 1, high, sequences);
+                return;
+            }
+        }
+        byte[] lowBytes = encode(low);
+        int length = lowBytes.length;
+        for(int i = 1; i < length; i++)
+        {
+            int mask = (1 << (6 * i)) - 1;
+            if((low & ~mask) != (high & ~mask))
+            {
+                if((low & mask) != 0)
+                {
+                    split(low, low | mask, sequences);
+                    split((low | mask) + 1, high, sequences);
+                    return;
+                }
+                if((high & mask) != mask)
+                {
+                    split(low, (high & ~mask) - 1, sequences);
+                    split(high & ~mask, high, sequences);
+                    return;
+                }
+            }
+        }
+        byte[] highBytes = encode(high);
+        int[][] sequence = new int[length][];
+        for(int k = 0; k < length; k++)
+            sequence[k] = new int[]{lowBytes[k] & 0xFF, highBytes[k] & 0xFF};
+        sequences.add(sequence);
+    }
+
+    /**
+     * Encodes one code point in UTF-8
+     * @param codePoint the code point, which is not a surrogate
+     * @return its bytes
+     */
+    private static byte[] encode(int codePoint)
+    {
+        return new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+    }
+}
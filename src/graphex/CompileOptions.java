@@ -0,0 +1,143 @@
+package graphex;
+
+/**
+ * This class holds the options that change how the parser compiles a regex into its automata.  The default options
+ * give the same automata the parser has always built
+ * @author Ryan Bertsche
+ */
+public class CompileOptions
+{
+    //True if the DFA should be minimized after the subset construction
+    private boolean minimize;
+
+    //True if the full DFA should be built, engines that run off of the NFA do not need it
+    private boolean buildDfa;
+
+    //Largest number of states the subset construction may make before it gives up, 0 for no limit
+    private int dfaStateLimit;
+
+    //True if the NFA is the Glushkov position automaton instead of the Thompson construction
+    private boolean glushkov;
+
+    /**
+     * Constructor that makes the default options
+     */
+    public CompileOptions()
+    {
+        minimize = false;
+        buildDfa = true;
+        dfaStateLimit = 0;
+        glushkov = false;
+    }
+
+    /**
+     * Copy constructor, used when the options have to be kept without later changes to the original showing through
+     * @param other options to copy
+     */
+    public CompileOptions(CompileOptions other)
+    {
+        minimize = other.minimize;
+        buildDfa = other.buildDfa;
+        dfaStateLimit = other.dfaStateLimit;
+        glushkov = other.glushkov;
+    }
+
+    /**
+     * Getter for whether the DFA will be minimized
+     * @return true if minimization is turned on
+     */
+    public boolean isMinimize()
+    {
+        return minimize;
+    }
+
+    /**
+     * Setter for whether the DFA will be minimized
+     * @param minimize true to run the minimization pass after the DFA is built
+     */
+    public void setMinimize(boolean minimize)
+    {
+        this.minimize = minimize;
+    }
+
+    /**
+     * Getter for whether the full DFA will be built
+     * @return true if the parser runs the subset construction
+     */
+    public boolean isBuildDfa()
+    {
+        return buildDfa;
+    }
+
+    /**
+     * Setter for whether the full DFA will be built
+     * @param buildDfa false to stop after the NFA is built
+     */
+    public void setBuildDfa(boolean buildDfa)
+    {
+        this.buildDfa = buildDfa;
+    }
+
+    /**
+     * Getter for the largest number of states the DFA may have
+     * @return state limit, 0 if there is no limit
+     */
+    public int getDfaStateLimit()
+    {
+        return dfaStateLimit;
+    }
+
+    /**
+     * Setter for the largest number of states the DFA may have.  If the subset construction goes over it, no DFA is built
+     * @param dfaStateLimit state limit, 0 for no limit
+     */
+    public void setDfaStateLimit(int dfaStateLimit)
+    {
+        this.dfaStateLimit = dfaStateLimit;
+    }
+
+    /**
+     * Getter for whether the NFA is built with the Glushkov construction
+     * @return true if the position automaton is built instead of the Thompson NFA
+     */
+    public boolean isGlushkov()
+    {
+        return glushkov;
+    }
+
+    /**
+     * Setter for whether the NFA is built with the Glushkov construction.  The position automaton has one state for every
+     * character in the regex plus a start state, and no epsilon transitions, so the subset construction never has to
+     * follow epsilon closures
+     * @param glushkov true to build the position automaton instead of the Thompson NFA
+     */
+    public void setGlushkov(boolean glushkov)
+    {
+        this.glushkov = glushkov;
+    }
+
+    /**
+     * Two sets of options are equal if they would compile a regex the same way
+     * @param o the other object
+     * @return true if every option is the same
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if(!(o instanceof CompileOptions))
+            return false;
+        CompileOptions other = (CompileOptions) o;
+        return minimize == other.minimize && buildDfa == other.buildDfa && dfaStateLimit == other.dfaStateLimit
+                && glushkov == other.glushkov;
+    }
+
+    /**
+     * Hash code that agrees with equals
+     * @return hash of every option
+     */
+    @Override
+    public int hashCode()
+    {
+        return (minimize ? 1 : 0) + (buildDfa ? 2 : 0) + (glushkov ? 4 : 0) + 31 * dfaStateLimit;
+    }
+}
@@ -0,0 +1,44 @@
+package graphex;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for one phase of compiling a regex.  The event's own duration is the wall time of the phase, and
+ * the fields hold the size of the automata once the phase is done.  When no recording has the event turned on, making and
+ * committing it costs next to nothing
+ * @author Ryan Bertsche
+ */
+@Name("graphex.CompilePhase")
+@Label("Regex Compile Phase")
+@Category("Graphex")
+@Description("One phase of compiling a regex into its automata")
+public class CompilePhaseEvent extends Event
+{
+    //Name of the phase, which is parse, index, subset or minimize
+    @Label("Phase")
+    String phase;
+
+    //The regex being compiled
+    @Label("Pattern")
+    String pattern;
+
+    //Number of NFA states, 0 before the NFA is built
+    @Label("NFA States")
+    int nfaStates;
+
+    //Number of DFA states, 0 before the DFA is built
+    @Label("DFA States")
+    int dfaStates;
+
+    //Number of epsilon closures computed so far
+    @Label("Epsilon Closures")
+    long closures;
+
+    //Number of (DFA state, character) steps the subset construction has taken so far
+    @Label("Subset Steps")
+    long subsetSteps;
+}
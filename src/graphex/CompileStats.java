@@ -0,0 +1,186 @@
+package graphex;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps the measurements the parser takes while it compiles a regex: the wall time of every phase, the sizes
+ * of the automata, and how much closure work was done.  Each phase is also sent out as a flight recorder event.  A
+ * parser runs on one thread, so nothing here is synchronized
+ * @author Ryan Bertsche
+ */
+public class CompileStats
+{
+    //The regex being compiled
+    private final String pattern;
+
+    //Wall time of every finished phase in nanoseconds, in the order the phases ran
+    private final LinkedHashMap<String, Long> phaseNanos;
+
+    //Start time of the phase that is running and its event
+    private long phaseStart;
+    private CompilePhaseEvent event;
+
+    //Sizes of the automata, 0 until they are built
+    private int nfaStates;
+    private int dfaStates;
+
+    //Number of epsilon closures worked out, one for every state when the table of closures is made and one for every
+    //closure the subset construction walks when there is no table, and the (DFA state, character) steps it takes
+    private long closures;
+    private long subsetSteps;
+
+    /**
+     * Constructor for the stats of one regex
+     * @param pattern the regex being compiled
+     */
+    public CompileStats(String pattern)
+    {
+        this.pattern = pattern;
+        phaseNanos = new LinkedHashMap<>();
+    }
+
+    /**
+     * Constructor for a copy of the stats of a finished compile, which a Pattern keeps so that nothing else holds a
+     * reference that could change them
+     * @param finished the stats once the parser is done
+     */
+    CompileStats(CompileStats finished)
+    {
+        pattern = finished.pattern;
+        phaseNanos = new LinkedHashMap<>(finished.phaseNanos);
+        nfaStates = finished.nfaStates;
+        dfaStates = finished.dfaStates;
+        closures = finished.closures;
+        subsetSteps = finished.subsetSteps;
+    }
+
+    /**
+     * Starts timing a phase
+     * @param phase name of the phase
+     */
+    void begin(String phase)
+    {
+        event = new CompilePhaseEvent();
+        event.phase = phase;
+        event.begin();
+        phaseStart = System.nanoTime();
+    }
+
+    /**
+     * Stops timing the phase that is running, and commits its event with the counters as they are now
+     */
+    void end()
+    {
+        long nanos = System.nanoTime() - phaseStart;
+        event.end();
+        phaseNanos.merge(event.phase, nanos, Long::sum);
+        if(event.shouldCommit())
+        {
+            event.pattern = pattern;
+            event.nfaStates = nfaStates;
+            event.dfaStates = dfaStates;
+            event.closures = closures;
+            event.subsetSteps = subsetSteps;
+            event.commit();
+        }
+        event = null;
+    }
+
+    /**
+     * Setter for the number of NFA states
+     * @param nfaStates state count of the NFA
+     */
+    void setNfaStates(int nfaStates)
+    {
+        this.nfaStates = nfaStates;
+    }
+
+    /**
+     * Setter for the number of DFA states
+     * @param dfaStates state count of the DFA
+     */
+    void setDfaStates(int dfaStates)
+    {
+        this.dfaStates = dfaStates;
+    }
+
+    /**
+     * Adds to the number of epsilon closures computed
+     * @param count closures computed
+     */
+    void addClosures(long count)
+    {
+        closures += count;
+    }
+
+    /**
+     * Adds to the number of subset construction steps
+     * @param count steps taken
+     */
+    void addSubsetSteps(long count)
+    {
+        subsetSteps += count;
+    }
+
+    /**
+     * Getter for the wall time of a phase
+     * @param phase name of the phase
+     * @return nanoseconds the phase took, 0 if it did not run
+     */
+    public long getPhaseNanos(String phase)
+    {
+        Long nanos = phaseNanos.get(phase);
+        return nanos == null ? 0 : nanos;
+    }
+
+    /**
+     * Getter for the number of NFA states
+     * @return NFA state count
+     */
+    public int getNfaStates()
+    {
+        return nfaStates;
+    }
+
+    /**
+     * Getter for the number of DFA states
+     * @return DFA state count, 0 if the DFA was not built
+     */
+    public int getDfaStates()
+    {
+        return dfaStates;
+    }
+
+    /**
+     * Getter for the number of epsilon closures computed
+     * @return closure count
+     */
+    public long getClosures()
+    {
+        return closures;
+    }
+
+    /**
+     * Getter for the number of subset construction steps
+     * @return step count
+     */
+    public long getSubsetSteps()
+    {
+        return subsetSteps;
+    }
+
+    /**
+     * Makes a short readable summary of the measurements, one line per phase and one for the counters
+     * @return the summary
+     */
+    public String summary()
+    {
+        StringBuilder out = new StringBuilder();
+        for(Map.Entry<String, Long> phase : phaseNanos.entrySet())
+            out.append(String.format("%-10s %10.3f ms%n", phase.getKey(), phase.getValue() / 1e6));
+        out.append(String.format("NFA states %d, DFA states %d, epsilon closures %d, subset steps %d%n",
+                nfaStates, dfaStates, closures, subsetSteps));
+        return out.toString();
+    }
+}
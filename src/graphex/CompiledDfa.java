@@ -0,0 +1,454 @@
+package graphex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * This is the flattened, table driven form of a DFA tree that is used for the actual matching.  Every DFA node is given
+ * a state number, and every one of the 256 possible input bytes is put into a byte class, where all bytes in a class
+ * transition the exact same way out of every state.  Transitions are then stored in one flat int array indexed by
+ * state * alphabetSize + byteClass, and accept states are held in a bitset, so matching a line is a tight loop over
+ * primitives with no boxing, hashing or allocation.  Once built the object is never changed.
+ * @author Ryan Bertsche
+ */
+public class CompiledDfa implements LineMatcher
+{
+    //Number of possible input values, every input is treated as a single byte
+    public static final int BYTE_VALUES = 256;
+
+    //Maps every byte value to the byte class it belongs to
+    private final byte[] classMap;
+
+    //Number of byte classes, which is the width of one row in the transition table
+    private final int alphabetSize;
+
+    //Flat transition table, the next state for state s on byte class k is at table[s * alphabetSize + k]
+    private final int[] table;
+
+    //Bitset of accepting states, bit s is set if state s is an accept state
+    private final long[] accept;
+
+    //Number of states in the table
+    private final int stateCount;
+
+    //State number of the start state
+    private final int startState;
+
+    //State number of the dead/termination state, which can never reach an accept state once entered
+    private final int deadState;
+
+    //The patterns each state accepts for when the dfa was built from several patterns at once, null for a single regex
+    private final int[][] patterns;
+
+    //Shared empty pattern list for lines that match nothing
+    private static final int[] NO_PATTERNS = new int[0];
+
+    //Start of every compiled dfa file, which is "GRDX", and the version of the file layout that is written
+    private static final int FILE_MAGIC = 0x47524458;
+    private static final int FILE_VERSION = 1;
+
+    //Bytes in the fixed part of the file, which is the magic number, version, state count, alphabet size, start state
+    //and dead state, followed by the byte class map
+    private static final int FILE_HEADER = 6 * 4 + BYTE_VALUES;
+
+    /**
+     * Constructor that flattens a DFA tree into the transition table.  The termination state of the tree is always given
+     * state number 0, the rest are numbered in the order they are reached from the start state.  Any character that has no
+     * transition out of a node goes to the termination state.
+     * @param dfaTree is the DFA tree returned by the parser
+     */
+    public CompiledDfa(FiniteAutomataTree dfaTree)
+    {
+        this(dfaTree, null);
+    }
+
+    /**
+     * Constructor that flattens a DFA tree built from several patterns, and keeps which patterns every state accepts for
+     * @param dfaTree is the DFA tree returned by the parser
+     * @param patternsOf gives the sorted pattern numbers a DFA node accepts for, like Parser.getPatternIds, or null if the tree is from a single regex
+     */
+    public CompiledDfa(FiniteAutomataTree dfaTree, Function<FiniteAutomataNode, int[]> patternsOf)
+    {
+        //Number all the states, starting with the termination state so it is always state 0
+        IdentityHashMap<FiniteAutomataNode, Integer> numbers = new IdentityHashMap<>();
+        ArrayList<FiniteAutomataNode> states = new ArrayList<>();
+        FiniteAutomataNode nullState = dfaTree.getNullState();
+        if(nullState == null)
+            nullState = new FiniteAutomataNode(false);
+        numbers.put(nullState, 0);
+        states.add(nullState);
+        numbers.put(dfaTree.getStartNode(), states.size());
+        states.add(dfaTree.getStartNode());
+
+        //Breadth first walk of the tree, so states that are close to each other in the input are close in the table
+        for(int i = 0; i < states.size(); i++)
+        {
+            for(FiniteAutomataNode next : states.get(i).getValues())
+            {
+                if(!numbers.containsKey(next))
+                {
+                    numbers.put(next, states.size());
+                    states.add(next);
+                }
+            }
+        }
+        stateCount = states.size();
+        deadState = 0;
+        startState = numbers.get(dfaTree.getStartNode());
+
+        //Build the column of destination states for every byte, bytes with identical columns share a byte class
+        classMap = new byte[BYTE_VALUES];
+        List<int[]> classColumns = new ArrayList<>();
+        HashMap<Integer, List<Integer>> classesByHash = new HashMap<>();
+        for(int b = 0; b < BYTE_VALUES; b++)
+        {
+            int[] column = new int[stateCount];
+            for(int s = 0; s < stateCount; s++)
+            {
+                FiniteAutomataNode next = states.get(s).getMappedValue((char) b);
+                column[s] = next == null ? deadState : numbers.get(next);
+            }
+            classMap[b] = (byte) findOrAddClass(column, classColumns, classesByHash);
+        }
+        alphabetSize = classColumns.size();
+
+        //Lay the columns out row by row so one state's transitions are contiguous in memory
+        table = new int[stateCount * alphabetSize];
+        for(int k = 0; k < alphabetSize; k++)
+        {
+            int[] column = classColumns.get(k);
+            for(int s = 0; s < stateCount; s++)
+                table[s * alphabetSize + k] = column[s];
+        }
+
+        accept = new long[(stateCount + 63) >>> 6];
+        for(int s = 0; s < stateCount; s++)
+        {
+            if(states.get(s).getAccept())
+                accept[s >>> 6] |= 1L << s;
+        }
+
+        if(patternsOf == null)
+            patterns = null;
+        else
+        {
+            patterns = new int[stateCount][];
+            for(int s = 0; s < stateCount; s++)
+                patterns[s] = isAccept(s) ? patternsOf.apply(states.get(s)) : NO_PATTERNS;
+        }
+    }
+
+    /**
+     * Constructor for a dfa that is read back from a file, only used by load
+     * @param classMap byte class of every byte
+     * @param alphabetSize number of byte classes
+     * @param table flat transition table
+     * @param accept bitset of accepting states
+     * @param stateCount number of states
+     * @param startState state number of the start state
+     * @param deadState state number of the dead state
+     */
+    private CompiledDfa(byte[] classMap, int alphabetSize, int[] table, long[] accept, int stateCount, int startState, int deadState)
+    {
+        this.classMap = classMap;
+        this.alphabetSize = alphabetSize;
+        this.table = table;
+        this.accept = accept;
+        this.stateCount = stateCount;
+        this.startState = startState;
+        this.deadState = deadState;
+        patterns = null;
+    }
+
+    /**
+     * Writes the dfa to a file in a binary layout that load can read back without compiling the regex again.  The file is
+     * the magic number, the version, the state count, alphabet size, start state and dead state, the byte class map, the
+     * transition table, the accept bitset, and last a CRC32 of everything before it, all big endian.  The patterns of a
+     * dfa built from a pattern file are not saved
+     * @param file path of the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException
+    {
+        if(patterns != null)
+            throw new Error("A DFA built from a pattern file can not be saved.");
+        ByteBuffer out = ByteBuffer.allocate(FILE_HEADER + table.length * 4 + accept.length * 8 + 4);
+        out.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(stateCount).putInt(alphabetSize).putInt(startState).putInt(deadState);
+        out.put(classMap);
+        out.asIntBuffer().put(table);
+        out.position(out.position() + table.length * 4);
+        out.asLongBuffer().put(accept);
+        out.position(out.position() + accept.length * 8);
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), 0, out.position());
+        out.putInt((int) crc.getValue());
+        out.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(out.hasRemaining())
+                channel.write(out);
+        }
+    }
+
+    /**
+     * Reads a dfa written by save.  The file is memory mapped, checked against its CRC32, and the table is copied out of
+     * the mapping in one bulk copy into the int array the match loop runs on, so loading takes about as long as reading
+     * the file no matter how long the regex took to compile.  Every state number in the file is checked to be in range,
+     * so a damaged file can not make matching read outside the table
+     * @param file path of the file to read
+     * @return the dfa in the file
+     * @throws IOException if the file cannot be read
+     */
+    public static CompiledDfa load(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size < FILE_HEADER + 4 || size > Integer.MAX_VALUE)
+                throw new Error(file + " is not a compiled DFA file.");
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if(in.getInt(0) != FILE_MAGIC)
+                throw new Error(file + " is not a compiled DFA file.");
+            if(in.getInt(4) != FILE_VERSION)
+                throw new Error(file + " is version " + in.getInt(4) + " of the compiled DFA format, only version " + FILE_VERSION + " can be read.");
+
+            int body = (int) size - 4;
+            CRC32 crc = new CRC32();
+            ByteBuffer checked = in.duplicate();
+            checked.limit(body);
+            crc.update(checked);
+            if((int) crc.getValue() != in.getInt(body))
+                throw new Error(file + " is damaged, its checksum does not match.");
+
+            in.position(8);
+            int stateCount = in.getInt();
+            int alphabetSize = in.getInt();
+            int startState = in.getInt();
+            int deadState = in.getInt();
+            long tableSize = (long) stateCount * alphabetSize;
+            int acceptWords = (stateCount + 63) >>> 6;
+            if(stateCount < 1 || alphabetSize < 1 || alphabetSize > BYTE_VALUES
+                    || FILE_HEADER + tableSize * 4 + acceptWords * 8L + 4 != size)
+                throw new Error(file + " is damaged, its sizes do not add up.");
+
+            byte[] classMap = new byte[BYTE_VALUES];
+            in.get(classMap);
+            int[] table = new int[(int) tableSize];
+            in.asIntBuffer().get(table);
+            in.position(in.position() + table.length * 4);
+            long[] accept = new long[acceptWords];
+            in.asLongBuffer().get(accept);
+
+            boolean valid = startState >= 0 && startState < stateCount && deadState >= 0 && deadState < stateCount;
+            for(int b = 0; b < BYTE_VALUES && valid; b++)
+                valid = (classMap[b] & 0xFF) < alphabetSize;
+            for(int i = 0; i < table.length && valid; i++)
+                valid = table[i] >= 0 && table[i] < stateCount;
+            if(!valid)
+                throw new Error(file + " is damaged, it has a state number out of range.");
+            return new CompiledDfa(classMap, alphabetSize, table, accept, stateCount, startState, deadState);
+        }
+    }
+
+    /**
+     * Helper that returns the byte class of the given column of destination states, making a new class if no byte
+     * before it had the same column
+     * @param column destination state for every state on one byte
+     * @param classColumns list of the column for each class made so far, indexed by class
+     * @param classesByHash map of column hash codes to the classes with that hash
+     * @return the byte class for the column
+     */
+    private static int findOrAddClass(int[] column, List<int[]> classColumns, HashMap<Integer, List<Integer>> classesByHash)
+    {
+        int hash = Arrays.hashCode(column);
+        List<Integer> candidates = classesByHash.get(hash);
+        if(candidates == null)
+        {
+            candidates = new ArrayList<>();
+            classesByHash.put(hash, candidates);
+        }
+        for(int k : candidates)
+        {
+            if(Arrays.equals(classColumns.get(k), column))
+                return k;
+        }
+        classColumns.add(column);
+        candidates.add(classColumns.size() - 1);
+        return classColumns.size() - 1;
+    }
+
+    /**
+     * Runs the whole line through the table starting from the start state and checks if it ends in an accept state.
+     * A line with characters that are not ASCII is matched as its UTF-8 bytes, the same as it would be read from a file.  Matching stops early
+     * as soon as the termination state is reached
+     * @param line is a String of a single line to be checked for a match
+     * @return true if the entire line is in the language of the DFA
+     */
+    public boolean matches(String line)
+    {
+        int state = startState;
+        for(int i = 0, n = line.length(); i < n; i++)
+        {
+            char c = line.charAt(i);
+            //A character that is not ASCII is matched as the bytes of its UTF-8 encoding, so the whole line is encoded
+            if(c >= 0x80)
+            {
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                return matches(ByteBuffer.wrap(bytes), 0, bytes.length);
+            }
+            state = table[state * alphabetSize + (classMap[c] & 0xFF)];
+            if(state == deadState)
+                return false;
+        }
+        return isAccept(state);
+    }
+
+    /**
+     * Runs the bytes of one line in a buffer through the table and checks if it ends in an accept state
+     * @param buf buffer holding the line
+     * @param from index of the first byte of the line
+     * @param to index one past the last byte of the line
+     * @return true if the entire line is in the language of the DFA
+     */
+    public boolean matches(ByteBuffer buf, int from, int to)
+    {
+        int state = startState;
+        for(int i = from; i < to; i++)
+        {
+            state = table[state * alphabetSize + (classMap[buf.get(i) & 0xFF] & 0xFF)];
+            if(state == deadState)
+                return false;
+        }
+        return isAccept(state);
+    }
+
+    /**
+     * Runs the bytes of one line through the table and finds which of the patterns the dfa was built from match it.  Since
+     * every pattern is in the one table, this costs the same no matter how many patterns there are
+     * @param buf buffer holding the line
+     * @param from index of the first byte of the line
+     * @param to index one past the last byte of the line
+     * @return sorted numbers of the matching patterns, empty if none match or the dfa was built from a single regex
+     */
+    public int[] matchedPatterns(ByteBuffer buf, int from, int to)
+    {
+        if(patterns == null)
+            return NO_PATTERNS;
+        int state = startState;
+        for(int i = from; i < to && state != deadState; i++)
+            state = table[state * alphabetSize + (classMap[buf.get(i) & 0xFF] & 0xFF)];
+        return patterns[state];
+    }
+
+    /**
+     * Splits the buffer into lines and runs the table over it in the same pass, so every byte is only read once.  When
+     * a line reaches the termination state the rest of it is skipped with a plain search for the end of the line
+     * @param buf buffer holding the input
+     * @param from index of the first byte to scan, which must be the start of a line
+     * @param to index one past the last byte to scan
+     * @param endOfInput true if there is no more input after this range
+     * @param handler callback for matching lines
+     * @return index of the start of the unfinished line, or to if every line in the range was finished, or the start of the
+     * line after the last one handed over if the handler is done
+     */
+    public int scanLines(ByteBuffer buf, int from, int to, boolean endOfInput, LineHandler handler)
+    {
+        int lineStart = from;
+        int state = startState;
+        int i = from;
+        while(i < to)
+        {
+            int b = buf.get(i) & 0xFF;
+            if(b == '\n' || b == '\r')
+            {
+                //A '\r' at the end of the range could be the first half of a "\r\n" that is not here yet
+                if(b == '\r' && i + 1 == to && !endOfInput)
+                    return lineStart;
+                boolean matched = isAccept(state);
+                if(matched)
+                    handler.matchedLine(buf, lineStart, i);
+                if(b == '\r' && i + 1 < to && buf.get(i + 1) == '\n')
+                    i++;
+                lineStart = ++i;
+                if(matched && handler.isDone())
+                    return lineStart;
+                state = startState;
+                continue;
+            }
+            state = table[state * alphabetSize + (classMap[b] & 0xFF)];
+            i++;
+            if(state == deadState)
+            {
+                //Nothing after this can match, so skip ahead to the end of the line
+                while(i < to)
+                {
+                    byte skipped = buf.get(i);
+                    if(skipped == '\n' || skipped == '\r')
+                        break;
+                    i++;
+                }
+            }
+        }
+        if(!endOfInput)
+            return lineStart;
+        if(lineStart < to && isAccept(state))
+            handler.matchedLine(buf, lineStart, to);
+        return to;
+    }
+
+    /**
+     * Checks the accept bitset for a state
+     * @param state state number
+     * @return true if the state is an accept state
+     */
+    public boolean isAccept(int state)
+    {
+        return (accept[state >>> 6] & (1L << state)) != 0;
+    }
+
+    /**
+     * Getter for the number of states in the table
+     * @return number of states, including the termination state
+     */
+    public int getStateCount()
+    {
+        return stateCount;
+    }
+
+    /**
+     * Getter for the number of byte classes
+     * @return width of one row of the transition table
+     */
+    public int getAlphabetSize()
+    {
+        return alphabetSize;
+    }
+
+    /**
+     * Getter for the start state
+     * @return state number of the start state
+     */
+    public int getStartState()
+    {
+        return startState;
+    }
+
+    /**
+     * Getter for the termination state
+     * @return state number of the dead state
+     */
+    public int getDeadState()
+    {
+        return deadState;
+    }
+}
@@ -0,0 +1,359 @@
+package graphex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * This class turns a DFA tree into the minimal equivalent DFA tree using Hopcroft's partition refinement algorithm.
+ * States start out split into accepting and non-accepting blocks, and blocks keep getting split by (block, character)
+ * splitters until no block has two states that go to different blocks on the same character.  Each block is then one
+ * state of the minimal DFA.  Only the smaller half of every split is put back on the worklist, which is what keeps
+ * the running time at O(n*k*log n) for n states and k characters
+ * @author Ryan Bertsche
+ */
+public class DfaMinimizer
+{
+    //The minimal DFA tree that is built
+    private FiniteAutomataTree minimizedTree;
+
+    //Number of states in the DFA before and after minimization
+    private int statesBefore;
+    private int statesAfter;
+
+    //All the DFA states, indexed by state number
+    private ArrayList<FiniteAutomataNode> states;
+
+    //Every character that has a transition out of any state, indexed by character number
+    private ArrayList<Character> alphabet;
+
+    //Predecessor lists for every (character, state) pair, stored flat.  The states that go to state q on character a are
+    //predecessors[predecessorStart[a * n + q]] up to predecessors[predecessorStart[a * n + q + 1]]
+    private int[] predecessorStart;
+    private int[] predecessors;
+
+    //The partition of the states.  The states of block b are elements[blockFirst[b]] up to elements[blockEnd[b]],
+    //location holds where each state is in elements, and blockOf holds which block each state is in
+    private int[] elements;
+    private int[] location;
+    private int[] blockOf;
+    private int[] blockFirst;
+    private int[] blockEnd;
+    private int blockCount;
+
+    //Number of states marked in each block while a splitter is being handled, marked states are moved to the front of their block
+    private int[] marked;
+
+    //Worklist of splitters, with the set of (block, character) pairs on the list for quick membership checks
+    private ArrayDeque<int[]> splitters;
+    private BitSet onWorklist;
+
+    /**
+     * Constructor that runs the minimization on the given DFA tree.  The given tree is not changed
+     * @param dfaTree is a complete DFA tree, like the one returned by the parser
+     */
+    public DfaMinimizer(FiniteAutomataTree dfaTree)
+    {
+        numberStates(dfaTree);
+        buildPredecessors();
+        refine();
+        buildMinimizedTree(dfaTree);
+    }
+
+    /**
+     * Getter for the minimized tree
+     * @return minimal DFA tree
+     */
+    public FiniteAutomataTree getMinimizedTree()
+    {
+        return minimizedTree;
+    }
+
+    /**
+     * Getter for the number of states before minimization
+     * @return state count of the original DFA, including the termination state
+     */
+    public int getStatesBefore()
+    {
+        return statesBefore;
+    }
+
+    /**
+     * Getter for the number of states after minimization
+     * @return state count of the minimal DFA, including the termination state
+     */
+    public int getStatesAfter()
+    {
+        return statesAfter;
+    }
+
+    /**
+     * Gives every DFA state and every character a number.  The termination state is state 0, and it is also where any
+     * missing transition goes, so the DFA is treated as complete
+     * @param dfaTree tree being minimized
+     */
+    private void numberStates(FiniteAutomataTree dfaTree)
+    {
+        states = new ArrayList<>();
+        FiniteAutomataNode nullState = dfaTree.getNullState();
+        if(nullState == null)
+            nullState = new FiniteAutomataNode(false);
+        states.add(nullState);
+        for(FiniteAutomataNode fan : dfaTree.getAllNodes())
+        {
+            if(fan != nullState)
+                states.add(fan);
+        }
+        statesBefore = states.size();
+
+        alphabet = new ArrayList<>();
+        HashMap<Character, Integer> seen = new HashMap<>();
+        for(FiniteAutomataNode fan : states)
+        {
+            for(Character c : fan.getKeys())
+            {
+                if(!seen.containsKey(c))
+                {
+                    seen.put(c, alphabet.size());
+                    alphabet.add(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the flat predecessor lists for every (character, state) pair with a counting pass and a filling pass
+     */
+    private void buildPredecessors()
+    {
+        int n = states.size();
+        int k = alphabet.size();
+        IdentityHashMap<FiniteAutomataNode, Integer> numbers = new IdentityHashMap<>();
+        for(int q = 0; q < n; q++)
+            numbers.put(states.get(q), q);
+
+        int[] target = new int[n * k];
+        predecessorStart = new int[n * k + 1];
+        for(int p = 0; p < n; p++)
+        {
+            for(int a = 0; a < k; a++)
+            {
+                FiniteAutomataNode next = states.get(p).getMappedValue(alphabet.get(a));
+                int q = next == null ? 0 : numbers.get(next);
+                target[p * k + a] = q;
+                predecessorStart[a * n + q + 1]++;
+            }
+        }
+        for(int i = 0; i < n * k; i++)
+            predecessorStart[i + 1] += predecessorStart[i];
+
+        predecessors = new int[n * k];
+        int[] fill = new int[n * k];
+        for(int p = 0; p < n; p++)
+        {
+            for(int a = 0; a < k; a++)
+            {
+                int slot = a * n + target[p * k + a];
+                predecessors[predecessorStart[slot] + fill[slot]++] = p;
+            }
+        }
+    }
+
+    /**
+     * The actual Hopcroft refinement.  Sets up the accept/non-accept partition, then works through splitters until the
+     * worklist is empty
+     */
+    private void refine()
+    {
+        int n = states.size();
+        int k = alphabet.size();
+        elements = new int[n];
+        location = new int[n];
+        blockOf = new int[n];
+        blockFirst = new int[n];
+        blockEnd = new int[n];
+        marked = new int[n];
+        splitters = new ArrayDeque<>();
+        onWorklist = new BitSet();
+
+        //Initial partition puts the non accepting states first and the accepting states after them
+        int front = 0;
+        for(int q = 0; q < n; q++)
+        {
+            if(!states.get(q).getAccept())
+                elements[front++] = q;
+        }
+        int nonAccepting = front;
+        for(int q = 0; q < n; q++)
+        {
+            if(states.get(q).getAccept())
+                elements[front++] = q;
+        }
+        blockCount = 0;
+        if(nonAccepting > 0)
+            addBlock(0, nonAccepting);
+        if(nonAccepting < n)
+            addBlock(nonAccepting, n);
+
+        //Only one of the two starting blocks has to be a splitter, so the smaller one is used
+        int smallest = 0;
+        if(blockCount == 2 && blockSize(1) < blockSize(0))
+            smallest = 1;
+        for(int a = 0; a < k; a++)
+            addSplitter(smallest, a);
+
+        int[] splitterStates = new int[n];
+        ArrayList<Integer> touched = new ArrayList<>();
+        while(!splitters.isEmpty())
+        {
+            int[] splitter = splitters.poll();
+            int block = splitter[0];
+            int a = splitter[1];
+            onWorklist.clear(block * k + a);
+
+            //Copy the splitter's states first, because marking moves states around inside their blocks
+            int size = blockSize(block);
+            System.arraycopy(elements, blockFirst[block], splitterStates, 0, size);
+            for(int i = 0; i < size; i++)
+            {
+                int slot = a * n + splitterStates[i];
+                for(int j = predecessorStart[slot]; j < predecessorStart[slot + 1]; j++)
+                    mark(predecessors[j], touched);
+            }
+
+            //Split every block that only had some of its states marked
+            for(int b : touched)
+            {
+                if(marked[b] < blockSize(b))
+                    split(b, k);
+                marked[b] = 0;
+            }
+            touched.clear();
+        }
+        statesAfter = blockCount;
+    }
+
+    /**
+     * Makes a new block out of a range of the elements array
+     * @param first index of the first state of the block in elements
+     * @param end index one past the last state of the block
+     * @return number of the new block
+     */
+    private int addBlock(int first, int end)
+    {
+        int b = blockCount++;
+        blockFirst[b] = first;
+        blockEnd[b] = end;
+        for(int i = first; i < end; i++)
+        {
+            location[elements[i]] = i;
+            blockOf[elements[i]] = b;
+        }
+        return b;
+    }
+
+    /**
+     * Getter for the number of states in a block
+     * @param b block number
+     * @return number of states in the block
+     */
+    private int blockSize(int b)
+    {
+        return blockEnd[b] - blockFirst[b];
+    }
+
+    /**
+     * Puts a (block, character) splitter on the worklist
+     * @param b block number
+     * @param a character number
+     */
+    private void addSplitter(int b, int a)
+    {
+        onWorklist.set(b * alphabet.size() + a);
+        splitters.add(new int[]{b, a});
+    }
+
+    /**
+     * Marks a state by swapping it to the front of the unmarked states of its block
+     * @param q state number
+     * @param touched list of blocks that have had a state marked, the block is added the first time
+     */
+    private void mark(int q, ArrayList<Integer> touched)
+    {
+        int b = blockOf[q];
+        int boundary = blockFirst[b] + marked[b];
+        int i = location[q];
+        if(i < boundary)
+            return;
+        int other = elements[boundary];
+        elements[boundary] = q;
+        location[q] = boundary;
+        elements[i] = other;
+        location[other] = i;
+        if(marked[b]++ == 0)
+            touched.add(b);
+    }
+
+    /**
+     * Splits the marked states off of a block into a new block, and updates the worklist.  If the old block was waiting
+     * as a splitter on a character, both halves have to be used for that character, otherwise only the smaller half is
+     * @param b block being split
+     * @param k number of characters
+     */
+    private void split(int b, int k)
+    {
+        int first = blockFirst[b];
+        int boundary = first + marked[b];
+        blockFirst[b] = boundary;
+        int c = addBlock(first, boundary);
+        for(int a = 0; a < k; a++)
+        {
+            if(onWorklist.get(b * k + a))
+                addSplitter(c, a);
+            else if(blockSize(c) <= blockSize(b))
+                addSplitter(c, a);
+            else
+                addSplitter(b, a);
+        }
+    }
+
+    /**
+     * Builds the minimal tree with one node per block.  Transitions are taken from any one state of each block, because
+     * every state in a block transitions the same way.  Nodes are named with the names of all states that were merged into them
+     * @param dfaTree original tree, used to find which block the start state ended up in
+     */
+    private void buildMinimizedTree(FiniteAutomataTree dfaTree)
+    {
+        minimizedTree = new FiniteAutomataTree();
+        FiniteAutomataNode[] blockNodes = new FiniteAutomataNode[blockCount];
+        for(int b = 0; b < blockCount; b++)
+        {
+            FiniteAutomataNode representative = states.get(elements[blockFirst[b]]);
+            blockNodes[b] = new FiniteAutomataNode(representative.getAccept());
+            StringBuilder name = new StringBuilder();
+            for(int i = blockFirst[b]; i < blockEnd[b]; i++)
+                name.append(i == blockFirst[b] ? "" : " | ").append(states.get(elements[i]).getName());
+            blockNodes[b].setName(name.toString());
+            blockNodes[b].setDfaChecked(true);
+            minimizedTree.addNode(blockNodes[b]);
+        }
+
+        IdentityHashMap<FiniteAutomataNode, Integer> numbers = new IdentityHashMap<>();
+        for(int q = 0; q < states.size(); q++)
+            numbers.put(states.get(q), q);
+        for(int b = 0; b < blockCount; b++)
+        {
+            FiniteAutomataNode representative = states.get(elements[blockFirst[b]]);
+            for(Character c : representative.getKeys())
+                blockNodes[b].addCharactertransition(c, blockNodes[blockOf[numbers.get(representative.getMappedValue(c))]]);
+        }
+
+        //The termination state is state 0, and the block holding it becomes the termination state of the minimal tree
+        FiniteAutomataNode nullBlock = blockNodes[blockOf[0]];
+        nullBlock.setName("Termination State");
+        minimizedTree.setNullState(nullBlock);
+        minimizedTree.setStartNode(blockNodes[blockOf[numbers.get(dfaTree.getStartNode())]]);
+    }
+}
@@ -0,0 +1,150 @@
+package graphex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class finds matches of the regex inside a line instead of checking the whole line.  It finds the leftmost match,
+ * and the longest one starting there, with three lazy DFAs and no backtracking, so every search is linear in the length
+ * of the input.  An unanchored forward DFA first reads the input until some match ends, which throws out input with no
+ * match in a single pass.  An unanchored DFA over the reversed NFA then reads the input backwards from the end, and every
+ * position it accepts at is the start of a match, so the last one it accepts at is the leftmost start.  Last an anchored
+ * forward DFA reads from that start, and the last position it accepts at is the end of the longest match.  The lazy DFAs
+ * change as they match, so a searcher must not be shared between threads.
+ * @author Ryan Bertsche
+ */
+public class DfaSearcher implements LineMatcher
+{
+    //Finds whether any match ends in the input
+    private final LazyDfa forward;
+
+    //Finds the end of the longest match from a start
+    private final LazyDfa anchored;
+
+    //Runs over the reversed NFA to find where matches start
+    private final LazyDfa reverse;
+
+    /**
+     * Constructor for a searcher with the default cache size
+     * @param nfa the numbered NFA of the regex
+     */
+    public DfaSearcher(IndexedNfa nfa)
+    {
+        this(nfa, nfa.reverse(), LazyDfa.DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructor for a searcher that shares an already reversed NFA, so searchers for different threads only reverse it once
+     * @param nfa the numbered NFA of the regex
+     * @param reversed the reverse of the same NFA, from IndexedNfa.reverse
+     * @param cacheSize number of states the cache of each lazy DFA holds
+     */
+    public DfaSearcher(IndexedNfa nfa, IndexedNfa reversed, int cacheSize)
+    {
+        forward = new LazyDfa(nfa, cacheSize, true);
+        anchored = new LazyDfa(nfa, cacheSize, false);
+        reverse = new LazyDfa(reversed, cacheSize, true);
+    }
+
+    /**
+     * Finds the leftmost longest match in a range of a buffer
+     * @param buf buffer holding the input
+     * @param from index of the first byte searched
+     * @param to index one past the last byte searched
+     * @return the index of the first byte of the match and the index one past its last byte, or null if there is no match
+     */
+    public int[] find(ByteBuffer buf, int from, int to)
+    {
+        //Forward pass that stops at the first place any match ends
+        int state = forward.getStartState();
+        boolean found = forward.isAccept(state);
+        int i = from;
+        for(; i < to && !found; i++)
+        {
+            state = forward.next(state, buf.get(i) & 0xFF);
+            found = forward.isAccept(state);
+        }
+        forward.countSteps(i - from);
+        if(!found)
+            return null;
+
+        //Backward pass, where every accepting position is the start of a match
+        state = reverse.getStartState();
+        int start = reverse.isAccept(state) ? to : -1;
+        for(i = to - 1; i >= from; i--)
+        {
+            state = reverse.next(state, buf.get(i) & 0xFF);
+            if(reverse.isAccept(state))
+                start = i;
+        }
+        reverse.countSteps(to - from);
+
+        //Anchored forward pass from the leftmost start, where the last accepting position is the end of the longest match
+        state = anchored.getStartState();
+        int end = anchored.isAccept(state) ? start : -1;
+        for(i = start; i < to; i++)
+        {
+            state = anchored.next(state, buf.get(i) & 0xFF);
+            if(anchored.isDead(state))
+            {
+                i++;
+                break;
+            }
+            if(anchored.isAccept(state))
+                end = i + 1;
+        }
+        anchored.countSteps(i - start);
+        return new int[]{start, end};
+    }
+
+    /**
+     * Finds the leftmost longest match in a String.  The string is searched as its UTF-8 bytes, the same as it would be
+     * read from a file, and the byte offsets of the match are turned back into character indexes
+     * @param line the string to search
+     * @return the index of the first character of the match and the index one past its last character, or null if there is no match
+     */
+    public int[] find(String line)
+    {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        int[] match = find(ByteBuffer.wrap(bytes), 0, bytes.length);
+        if(match == null || bytes.length == line.length())
+            return match;
+        return new int[]{new String(bytes, 0, match[0], StandardCharsets.UTF_8).length(),
+                new String(bytes, 0, match[1], StandardCharsets.UTF_8).length()};
+    }
+
+    /**
+     * Checks if there is a match anywhere in the line
+     * @param line is a String of a single line to be searched
+     * @return true if some part of the line matches
+     */
+    public boolean matches(String line)
+    {
+        return find(line) != null;
+    }
+
+    /**
+     * Checks if there is a match anywhere in one line of a buffer.  Only the forward pass is needed for this
+     * @param buf buffer holding the line
+     * @param from index of the first byte of the line
+     * @param to index one past the last byte of the line
+     * @return true if some part of the line matches
+     */
+    public boolean matches(ByteBuffer buf, int from, int to)
+    {
+        int state = forward.getStartState();
+        if(forward.isAccept(state))
+            return true;
+        for(int i = from; i < to; i++)
+        {
+            state = forward.next(state, buf.get(i) & 0xFF);
+            if(forward.isAccept(state))
+            {
+                forward.countSteps(i + 1 - from);
+                return true;
+            }
+        }
+        forward.countSteps(to - from);
+        return false;
+    }
+}
@@ -5,7 +5,8 @@ import java.util.*;
 /**This is the data structure that hold the nodes/states for the NFA and DFA. Character transitions are stored in a hashmap
  * and epsilon transitions are held in a sperate set. Even though NFAs technically allow multiple transtions on the same character
  * from one node, with this implemntation it does not happen, so a unique hashmap can be used for characters. Also having nodes that
- * are epsilon transitioned to in a separate set helps with unique sets and reducing complexity
+ * are epsilon transitioned to in a separate set helps with unique sets and reducing complexity.  A character class is
+ * one transition on a set of byte ranges, held in its own map, instead of a transition for every character in it
  * @author Ryan Bertsche
  */
 public class FiniteAutomataNode implements Comparable<FiniteAutomataNode>
@@ -16,6 +17,10 @@ public class FiniteAutomataNode implements Comparable<FiniteAutomataNode>
     //hashmap of character transitions keyed on character and mapped to nodes transitioned to
     private HashMap<Character, FiniteAutomataNode> characterTransitions;
 
+    //Transitions on any byte of a character class, keyed on the byte ranges.  Only NFA nodes have these, DFA nodes
+    //always have one character transition for every byte
+    private LinkedHashMap<ByteRanges, FiniteAutomataNode> rangeTransitions;
+
     //Set of nodes reachable from this node via epsilon traansitions
     private HashSet<FiniteAutomataNode> epsilonTransitions;
 
@@ -42,6 +47,7 @@ public class FiniteAutomataNode implements Comparable<FiniteAutomataNode>
         name = "";
         dfaChecked = false;
         this.dfaContains = new HashSet<FiniteAutomataNode>();
+        this.rangeTransitions = new LinkedHashMap<>();
     }
 
     /**
@@ -54,6 +60,7 @@ public class FiniteAutomataNode implements Comparable<FiniteAutomataNode>
         this.characterTransitions = new HashMap<>();
         this.dfaChecked = false;
         this.dfaContains = new HashSet<>(containedNodes);
+        this.rangeTransitions = new LinkedHashMap<>();
         this.accept = this.checkAccept();
         //Special method call that sets the name of a dfa based on the names of the contained nfas, based on alphabetic sorted order
         this.name = dfaNameMaker();
@@ -73,6 +80,7 @@ public class FiniteAutomataNode implements Comparable<FiniteAutomataNode>
         name = "";
         dfaChecked = false;
         this.dfaContains = new HashSet<FiniteAutomataNode>();
+        this.rangeTransitions = new LinkedHashMap<>();
     }
 
     /**
@@ -88,6 +96,7 @@ public class FiniteAutomataNode implements Comparable<FiniteAutomataNode>
         name = "";
         dfaChecked = false;
         this.dfaContains = new HashSet<FiniteAutomataNode>();
+        this.rangeTransitions = new LinkedHashMap<>();
     }
 
     /**
@@ -106,6 +115,7 @@ public class FiniteAutomataNode implements Comparable<FiniteAutomataNode>
         name = "";
         dfaChecked = false;
         this.dfaContains = new HashSet<FiniteAutomataNode>();
+        this.rangeTransitions = new LinkedHashMap<>();
     }
 
     /**
@@ -151,6 +161,25 @@ public class FiniteAutomataNode implements Comparable<FiniteAutomataNode>
         this.characterTransitions.put(k, v);
     }
 
+    /**
+     * Adds a transition on every byte of a character class
+     * @param ranges the bytes transitioned on
+     * @param v Value node
+     */
+    public void addRangeTransition(ByteRanges ranges, FiniteAutomataNode v)
+    {
+        this.rangeTransitions.put(ranges, v);
+    }
+
+    /**
+     * Getter for the transitions on character classes
+     * @return map from the byte ranges of each class transition to the node it goes to
+     */
+    public LinkedHashMap<ByteRanges, FiniteAutomataNode> getRangeTransitions()
+    {
+        return rangeTransitions;
+    }
+
     /**
      * Adds epsilon transition to given node
      * @param newEpsilon Node being epsilon transitioned to
@@ -20,6 +20,10 @@ public class FiniteAutomataTree
     //Node that holds null state, only used in DFA implementation
     private FiniteAutomataNode nullState;
 
+    //The accept nodes of the tree, kept up to date by union, concat and star so they do not have to be searched for.  It is
+    //null for a tree that is built node by node, whose accept nodes are found by looking through all of its nodes
+    private ArrayList<FiniteAutomataNode> acceptNodes;
+
     /**
      * Constructor that makes a new tree with no predifined values
      */
@@ -42,6 +46,26 @@ public class FiniteAutomataTree
         allNodes.add(accept);
         allNodes.add(start);
         this.startNode = start;
+        acceptNodes = new ArrayList<FiniteAutomataNode>();
+        acceptNodes.add(accept);
+    }
+
+    /**
+     * Constructor that makes a tree for a character class, used when building the nfa.  It is the same as the tree for
+     * one character, except the transition between the two nodes is on every byte of the class
+     * @param ranges the bytes of the class
+     */
+    public FiniteAutomataTree(ByteRanges ranges)
+    {
+        allNodes = new HashSet<FiniteAutomataNode>();
+        FiniteAutomataNode accept = new FiniteAutomataNode(true);
+        FiniteAutomataNode start = new FiniteAutomataNode(false);
+        start.addRangeTransition(ranges, accept);
+        allNodes.add(accept);
+        allNodes.add(start);
+        this.startNode = start;
+        acceptNodes = new ArrayList<FiniteAutomataNode>();
+        acceptNodes.add(accept);
     }
 
     /**
@@ -82,11 +106,14 @@ public class FiniteAutomataTree
     }
 
     /**
-     * getter that returns all nodes in this tree that are accept states, by getting the accept value from each node in tree
+     * getter that returns all nodes in this tree that are accept states.  If the tree was built with union, concat and star
+     * they are already known, otherwise they are found by getting the accept value from each node in tree
      * @return list of all accept nodes in the tree
      */
     private ArrayList<FiniteAutomataNode> getAllAccept()
     {
+        if(acceptNodes != null)
+            return acceptNodes;
         ArrayList<FiniteAutomataNode> tempList = new ArrayList<FiniteAutomataNode>();
         for(FiniteAutomataNode fan: this.allNodes)
         {
@@ -111,7 +138,16 @@ public class FiniteAutomataTree
         newStart.addEpsilonTransition(t.getStartNode());
 
         //Add all nodes from other tree to set of nodes in this tree
-        this.allNodes.addAll(t.getAllNodes());
+        addAllNodes(t);
+        if(acceptNodes == null || t.acceptNodes == null)
+            acceptNodes = null;
+        else if(t.acceptNodes.size() > acceptNodes.size())
+        {
+            t.acceptNodes.addAll(acceptNodes);
+            acceptNodes = t.acceptNodes;
+        }
+        else
+            acceptNodes.addAll(t.acceptNodes);
 
         //add new start node to set of all nodes in this tree
         this.allNodes.add(newStart);
@@ -132,8 +168,27 @@ public class FiniteAutomataTree
         //Set all accepts states of this tree to non-accept states
         this.setAcceptToFalse();
 
-        //Add all nodes of other tree to set of all nodes in this tree
-        this.allNodes.addAll(t.getAllNodes());
+        //Add all nodes of other tree to set of all nodes in this tree, the accept states of which are now the only ones
+        addAllNodes(t);
+        acceptNodes = t.acceptNodes;
+    }
+
+    /**
+     * Adds all the nodes of another tree to the set of nodes in this tree.  The smaller set is always the one copied, and
+     * if that is this tree's set, this tree takes over the other tree's set, so building a tree of n nodes out of many
+     * small ones copies each node only about log n times rather than up to n times.  union does the same with the lists of
+     * accept nodes.  The other tree must not be used after
+     * @param t other tree whose nodes are joining this tree
+     */
+    private void addAllNodes(FiniteAutomataTree t)
+    {
+        if(t.allNodes.size() > allNodes.size())
+        {
+            t.allNodes.addAll(allNodes);
+            allNodes = t.allNodes;
+        }
+        else
+            allNodes.addAll(t.allNodes);
     }
 
     /**
@@ -146,6 +201,8 @@ public class FiniteAutomataTree
 
         //Adds new start to list of all nodes in this tree
         this.allNodes.add(newStart);
+        if(acceptNodes != null)
+            acceptNodes.add(newStart);
 
         //epsilon all accept states of this tree to old start state, (includes newly added start state)
         this.epsilonToCurrentStart(this.startNode);
@@ -172,38 +229,7 @@ public class FiniteAutomataTree
     public void addNode(FiniteAutomataNode node)
     {
         allNodes.add(node);
-    }
-
-    /**
-     * Takes in a set of nfa nodes,and checks all the nodes in the tree to if there is a dfa node that contains that same set of NFA nodes
-     * @param other is set of contained nfa nodes that would make up a dfa
-     * @return true if there exists a single equivalent dfa node to the set of nfa nodes the dfa would contain in the tree
-     */
-    public boolean containsNode(HashSet<FiniteAutomataNode> other)
-    {
-        boolean contains = false;
-
-        //Loop through all nodes in this tree
-        for(FiniteAutomataNode fan : this.allNodes)
-        {
-            //boolean check to see if any node is equivalent
-            contains = contains || fan.dfaEquals(other);
-        }
-        return contains;
-    }
-
-    /**
-     * This method is called if there is a verified match, this method will find the matching dfa node and return it.
-     * @param matcher set of contained NFA nodes
-     * @return DFA node that matches
-     */
-    public FiniteAutomataNode getEquivalentDfa(HashSet<FiniteAutomataNode> matcher)
-    {
-        for(FiniteAutomataNode fan: this.allNodes) {
-            if (fan.dfaEquals(matcher))
-                return fan;
-        }
-        return null;
+        acceptNodes = null;
     }
 
     /**
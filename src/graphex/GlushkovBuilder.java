@@ -0,0 +1,329 @@
+package graphex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * This class builds the Glushkov automaton, also called the position automaton, of a parsed regex.  Every character and
+ * character class in the regex is a position and gets one state, and there is one more state for the start.  Reading a character always
+ * moves into the state of a position with that character, so there are no epsilon transitions at all, and no states
+ * besides the positions.  The transitions come from three sets that are worked out for every subtree: the positions a
+ * match can start with, the positions it can end with, and whether it matches the empty string.  From those, the
+ * positions that can follow each position are found, and those are the transitions out of its state.  A state can go
+ * to more than one position on the same character, which the nodes of a FiniteAutomataTree can not hold, so the
+ * automaton is built straight into an IndexedNfa
+ * @author Ryan Bertsche
+ */
+public class GlushkovBuilder
+{
+    //State number of the start state, the positions are numbered from 1 in the order they are in the regex
+    private static final int START = 0;
+
+    //The built automaton
+    private IndexedNfa indexedNfa;
+
+    //Every character that appears in the regexes
+    private HashSet<Character> alphabet;
+
+    //The regex each accepting state comes from.  The start state can accept for more than one regex at once
+    private IdentityHashMap<FiniteAutomataNode, List<Integer>> patternIds;
+
+    //The bytes every position matches, indexed by state number
+    private ByteRanges[] labels;
+
+    //The positions that can follow every position, indexed by state number, with the number of them in followCount
+    private int[][] follow;
+    private int[] followCount;
+
+    //Number of positions numbered so far
+    private int positions;
+
+    /**
+     * Constructor that builds the automaton of a single regex
+     * @param regex the parsed regex
+     */
+    public GlushkovBuilder(RegexNode regex)
+    {
+        this(Collections.singletonList(regex));
+    }
+
+    /**
+     * Constructor that builds one automaton for a list of regexes, which accepts a string if any of them matches it.  The
+     * positions of each regex are kept apart, so every accepting state belongs to one regex, except the start state,
+     * which accepts for every regex that matches the empty string
+     * @param regexes the parsed regexes, at least one
+     */
+    public GlushkovBuilder(List<RegexNode> regexes)
+    {
+        int total = 1;
+        for(RegexNode regex : regexes)
+            total += countPositions(regex);
+        labels = new ByteRanges[total];
+        follow = new int[total][];
+        followCount = new int[total];
+        positions = 1;
+        alphabet = new HashSet<>();
+
+        FiniteAutomataNode[] nodes = new FiniteAutomataNode[total];
+        nodes[START] = new FiniteAutomataNode(false);
+        nodes[START].setName("start");
+        patternIds = new IdentityHashMap<>();
+        for(int id = 0; id < regexes.size(); id++)
+        {
+            int firstPosition = positions;
+            Sets sets = setsOf(regexes.get(id));
+            addFollow(START, sets.first);
+            for(int p = firstPosition; p < positions; p++)
+            {
+                nodes[p] = new FiniteAutomataNode(false);
+                nodes[p].setName(Integer.toString(p));
+            }
+            for(int p : sets.last)
+                tag(nodes[p], id);
+            if(sets.nullable)
+                tag(nodes[START], id);
+        }
+        buildIndexedNfa(nodes);
+    }
+
+    /**
+     * Marks a state as accepting for a regex
+     * @param node the state
+     * @param id number of the regex
+     */
+    private void tag(FiniteAutomataNode node, int id)
+    {
+        node.setAccept(true);
+        List<Integer> ids = patternIds.get(node);
+        if(ids == null)
+        {
+            ids = new ArrayList<>();
+            patternIds.put(node, ids);
+        }
+        ids.add(id);
+    }
+
+    /**
+     * Counts the characters and classes in a regex, which is the number of positions it has
+     * @param regex the parsed regex
+     * @return number of CHAR and CLASS nodes
+     */
+    private static int countPositions(RegexNode regex)
+    {
+        return regex.fold((RegexNode node, List<Integer> children) -> {
+            int count = node.getKind() == RegexNode.Kind.CHAR || node.getKind() == RegexNode.Kind.CLASS ? 1 : 0;
+            for(int c : children)
+                count += c;
+            return count;
+        });
+    }
+
+    /**
+     * Works out the first and last positions and the nullability of every subtree, numbering the positions and filling in
+     * the follow sets on the way.  A concatenation links the last positions of what came before to the first positions of
+     * each child, and a star links the last positions of its child back to its first positions
+     * @param regex the parsed regex
+     * @return sets of the whole regex
+     */
+    private Sets setsOf(RegexNode regex)
+    {
+        return regex.fold((RegexNode node, List<Sets> children) -> {
+            Sets sets = new Sets();
+            switch(node.getKind())
+            {
+                case CHAR:
+                case CLASS:
+                    int p = positions++;
+                    if(node.getKind() == RegexNode.Kind.CHAR)
+                        labels[p] = ByteRanges.of(node.getCharacter(), node.getCharacter());
+                    else
+                        labels[p] = node.getRanges();
+                    for(int k = 0; k < labels[p].getRangeCount(); k++)
+                    {
+                        for(int b = labels[p].getLow(k); b <= labels[p].getHigh(k); b++)
+                            alphabet.add((char) b);
+                    }
+                    sets.first = new int[]{p};
+                    sets.last = sets.first;
+                    sets.nullable = false;
+                    return sets;
+                case STAR:
+                    Sets child = children.get(0);
+                    for(int q : child.last)
+                        addFollow(q, child.first);
+                    sets.first = child.first;
+                    sets.last = child.last;
+                    sets.nullable = true;
+                    return sets;
+                case CONCAT:
+                    //Positions that could be the last one read so far, which every next child's first positions follow
+                    int[] before = new int[0];
+                    sets.first = new int[0];
+                    sets.nullable = true;
+                    for(Sets next : children)
+                    {
+                        for(int q : before)
+                            addFollow(q, next.first);
+                        if(sets.nullable)
+                            sets.first = join(sets.first, next.first);
+                        before = next.nullable ? join(before, next.last) : next.last;
+                        sets.nullable = sets.nullable && next.nullable;
+                    }
+                    sets.last = before;
+                    return sets;
+                default:
+                    //The options are copied into the lists in one go, so a long alternation is not copied over for every option
+                    int firstCount = 0;
+                    int lastCount = 0;
+                    for(Sets option : children)
+                    {
+                        firstCount += option.first.length;
+                        lastCount += option.last.length;
+                    }
+                    sets.first = new int[firstCount];
+                    sets.last = new int[lastCount];
+                    firstCount = 0;
+                    lastCount = 0;
+                    for(Sets option : children)
+                    {
+                        System.arraycopy(option.first, 0, sets.first, firstCount, option.first.length);
+                        System.arraycopy(option.last, 0, sets.last, lastCount, option.last.length);
+                        firstCount += option.first.length;
+                        lastCount += option.last.length;
+                        sets.nullable = sets.nullable || option.nullable;
+                    }
+                    return sets;
+            }
+        });
+    }
+
+    /**
+     * Adds positions to the follow set of a state
+     * @param state the state
+     * @param targets positions that can be read right after it
+     */
+    private void addFollow(int state, int[] targets)
+    {
+        int[] list = follow[state];
+        int count = followCount[state];
+        if(list == null)
+            list = new int[Math.max(4, targets.length)];
+        else if(count + targets.length > list.length)
+            list = Arrays.copyOf(list, Math.max(list.length * 2, count + targets.length));
+        System.arraycopy(targets, 0, list, count, targets.length);
+        follow[state] = list;
+        followCount[state] = count + targets.length;
+    }
+
+    /**
+     * Puts two lists of positions together.  The positions of different subtrees never overlap, so nothing has to be
+     * checked for doubles
+     * @param a first list
+     * @param b second list
+     * @return list with the positions of both
+     */
+    private static int[] join(int[] a, int[] b)
+    {
+        if(a.length == 0)
+            return b;
+        if(b.length == 0)
+            return a;
+        int[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+
+    /**
+     * Turns the follow sets into the flat transition arrays of an IndexedNfa, with a transition for every byte range of
+     * every position that can follow.  Each follow set is sorted and has its doubles taken out first, since nested stars
+     * can add the same positions to it more than once
+     * @param nodes the node for every state
+     */
+    private void buildIndexedNfa(FiniteAutomataNode[] nodes)
+    {
+        int[] edgeStart = new int[nodes.length + 1];
+        for(int s = 0; s < nodes.length; s++)
+        {
+            if(follow[s] == null)
+                continue;
+            int[] sorted = Arrays.copyOf(follow[s], followCount[s]);
+            Arrays.sort(sorted);
+            int unique = 0;
+            for(int i = 0; i < sorted.length; i++)
+            {
+                if(i == 0 || sorted[i] != sorted[i - 1])
+                    sorted[unique++] = sorted[i];
+            }
+            follow[s] = Arrays.copyOf(sorted, unique);
+            for(int q : follow[s])
+                edgeStart[s + 1] += labels[q].getRangeCount();
+        }
+        for(int s = 0; s < nodes.length; s++)
+            edgeStart[s + 1] += edgeStart[s];
+        int[] edgeLow = new int[edgeStart[nodes.length]];
+        int[] edgeHigh = new int[edgeStart[nodes.length]];
+        int[] edgeTarget = new int[edgeStart[nodes.length]];
+        for(int s = 0; s < nodes.length; s++)
+        {
+            if(follow[s] == null)
+                continue;
+            int e = edgeStart[s];
+            for(int q : follow[s])
+            {
+                for(int k = 0; k < labels[q].getRangeCount(); k++)
+                {
+                    edgeLow[e] = labels[q].getLow(k);
+                    edgeHigh[e] = labels[q].getHigh(k);
+                    edgeTarget[e] = q;
+                    e++;
+                }
+            }
+        }
+        indexedNfa = new IndexedNfa(nodes, START, edgeStart, edgeLow, edgeHigh, edgeTarget);
+        follow = null;
+    }
+
+    /**
+     * Getter for the automaton
+     * @return the position automaton as a numbered NFA with no epsilon transitions
+     */
+    public IndexedNfa getIndexedNfa()
+    {
+        return indexedNfa;
+    }
+
+    /**
+     * Getter for the alphabet of the regexes
+     * @return set of every character that appears in them
+     */
+    public HashSet<Character> getAlphabet()
+    {
+        return alphabet;
+    }
+
+    /**
+     * Getter for the regexes each accepting state matches
+     * @return map from accepting node to the numbers of the regexes it accepts for
+     */
+    public IdentityHashMap<FiniteAutomataNode, List<Integer>> getPatternIds()
+    {
+        return patternIds;
+    }
+
+    /**
+     * The first positions, last positions and nullability of one regex subtree
+     */
+    private static class Sets
+    {
+        //Positions a match can start with and end with
+        int[] first;
+        int[] last;
+
+        //True if the subtree matches the empty string
+        boolean nullable;
+    }
+}
@@ -3,7 +3,17 @@
 package graphex;
 
 import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This is the main class for the a regex program that builds an NFA and DFA for a given regular expression,
@@ -14,8 +24,6 @@ import java.util.HashSet;
  */
 public class Grep
 {
-    //This is a set of characters for the language in the input
-    private static HashSet<Character> language = new HashSet<>();
     //boolean that is set when reading arguments to tell the program if it should output nfa and/or dfa dot files
     private static boolean printNFA;
     private static boolean printDFA;
@@ -24,83 +32,330 @@ public class Grep
     private static String nfaOutput;
     //Holds the inputted regex string before it gets parsed
     private static String regexAsString;
-    //Holds the file name of the input file that will be scanned over to be matched
-    private static String inputFileName;
-    //Holds the nfa and dfa tree that is returned from the parser method
-    private static FiniteAutomataTree dfa;
-    private static FiniteAutomataTree nfa;
-    //This is the parser object that turns the regex string into dfa nad nfa
-    private static Parser inputParse;
+    //Holds the paths of the input files and directories that will be scanned over to be matched
+    private static List<Path> inputPaths;
+    //The compiled regex, or the compiled patterns of the pattern file, which holds the nfa and dfa and everything else
+    //the engines are built from.  It is null when a compiled dfa is loaded with '--load'
+    private static Pattern pattern;
+    //The nfa and dfa trees the pattern was compiled from, which are only kept for printing with '-n' and '-d'
+    private static FiniteAutomataTree nfaTree;
+    private static FiniteAutomataTree dfaTree;
+    //The engine that the matching is actually run on, either the compiled dfa table, the lazy dfa or the nfa simulator
+    private static LineMatcher matcher;
+    //Buffered output stage the matching lines are written through to stdout
+    private static LineWriter output;
+    //Largest dfa the dfa engine builds before falling back to running the nfa
+    private static final int DEFAULT_DFA_STATE_LIMIT = 100000;
+    //Number of threads to match with and the size of the chunks the input is cut into when there is more than one
+    private static int threads;
+    private static long chunkSize;
+    //Largest number of files that are open at once when searching more than one file
+    private static int maxOpenFiles;
+    //Largest piece of the input file that is memory mapped at once
+    private static final long MAP_WINDOW = 1L << 30;
+    //The path that stands for standard input
+    private static final Path STANDARD_INPUT = Paths.get("-");
+    //Name of the engine picked with the '--engine=' option, and the cache size for the lazy dfa
+    private static String engine;
+    private static int cacheSize;
+    //Options the regex is compiled with
+    private static CompileOptions options;
+    //False if '--no-prefilter' was given, so the engine is not put behind the literal search of the pattern
+    private static boolean usePrefilter;
+    //True if lines are searched for a match anywhere in them with '--search', and the reversed nfa the searchers use
+    private static boolean search;
+    private static IndexedNfa reversedNfa;
+    //True if '--stats' was given, and the counters every scan adds to
+    private static boolean printStats;
+    private static ScanStats scanStats;
+    //Files the compiled dfa is written to with '--compile-to' and read from with '--load', null if not given
+    private static String compileTo;
+    private static String loadFile;
+    //Name of the file of patterns given with '-f', and the patterns read from it, null if a single regex was given
+    private static String patternFile;
+    private static List<String> patterns;
+    //Which of '-c', '-l' and '-q' was given, as 'c', 'l' or 'q', or 0 if the matching lines are printed
+    private static char summary;
+    //True once any input file has a matching line, and once any input could not be read, which make the exit status with '-q'
+    private static boolean anyMatched;
+    private static boolean anyError;
 
 
     /**
-     * Main method that accepts the arguments in the format  [-n NFA-FILE] [-d DFA-FILE] REGEX FILE.  As a result, the
-     * lines that match the regex will be outputted.  This method first parses the arguments to find out which optional
-     * inputs are chosen, and assigns all arguments to the appropriate variables above,and sets the print flags accordingly
+     * Main method that accepts the arguments in the format  [-n NFA-FILE] [-d DFA-FILE] [-m] [--engine=dfa|lazy|nfa]
+     * [--cache-size=N] [--dfa-limit=N] [--threads=N] [--chunk-size=BYTES] [--max-open=N] [--no-prefilter] [--search] [--compile-to=FILE] [--stats] [--glushkov] [-c|-l|-q] REGEX [PATH...],
+     * or the same options with '-f PATTERN-FILE [PATH...]' or '--load=FILE [PATH...]' in place of the regex.  If no path is
+     * given, or the path is '-', standard input is read instead, in pieces as it comes in, so it can be the end of a pipe.  As a result, the lines that match the regex will be outputted.  This method first parses the arguments to find out which optional
+     * inputs are chosen, and assigns all arguments to the appropriate variables above,and sets the print flags accordingly.
+     * The '-m' option minimizes the dfa before matching and prints the state counts from before and after to stderr.
+     * The '--engine=lazy' option matches with a dfa that is built as the input is read, in a cache of '--cache-size' states,
+     * and '--stats' prints its cache counters to stderr as well.  The '--engine=nfa' option matches by running the nfa directly,
+     * which has no compile step that can blow up.  The dfa engine also falls back to the nfa if the dfa would have more
+     * than '--dfa-limit' states.  With '--threads' above 1 the input is cut into chunks of '--chunk-size' bytes that are
+     * matched in parallel, and the matching lines are still printed in file order.  If more than one path is given, or a
+     * path is a directory, every file is searched, directories recursively, with at most '--max-open' files open at once,
+     * and every matching line starts with the name of its file.  If every match of the regex has to contain some literal
+     * text, the input is searched for that text first and only the lines it is found in are run through the engine, which
+     * '--no-prefilter' turns off.  With '-f' every line of the pattern file is a regex, and all of them are compiled into one
+     * dfa, so the input is only read once no matter how many patterns there are.  Patterns are numbered from 1 in the
+     * order they are in the file, skipping blank lines, and every matching line is printed after the numbers of all the
+     * patterns it matches.  With '--search' a line is printed if a match is found anywhere inside it rather than the whole
+     * line matching.  The search runs on lazy dfas whatever the engine is, and when a single file is scanned on one thread
+     * the start and end offsets of the leftmost longest match are printed in front of the line.  '--compile-to' writes the
+     * compiled dfa of the regex to a binary file, and then stops if no paths are given, and '--load' matches with a dfa
+     * read back from such a file instead of compiling a regex, which can not be combined with the options for building or
+     * picking the engine.  '--stats' prints the time of every compile phase, the sizes of
+     * the automata and the scan counters to stderr at the end.  The same numbers are always sent out as flight recorder
+     * events, which a recording picks up when it has the graphex events turned on.  '--glushkov' builds the position
+     * automaton of the regex instead of the Thompson nfa, which has no epsilon transitions, so there is no nfa tree for '-n' to print.
+     * Instead of the matching lines, '-c' prints how many lines of each file match, '-l' prints the names of the files
+     * that have a match, and '-q' prints nothing and exits with status 0 if anything matched, 1 if not, and 2 if nothing
+     * matched and some input could not be read.  '-l' stops reading a file at its first match, and '-q' stops at the first
+     * match of all.  These run on the multi file grep and the parallel grep the same way the matching lines do
      * @param args is the list of string arguments passed when calling the program
      */
     public static void main(String args[])
     {
-
-
-        String option1 = args[0].substring(0, 2);
-        String option2 = args[1].substring(0,2);
-
-
-        //Analyze the arguments and pull all the data based on the options
-        if(option1.equals("-n"))
+        printDFA = false;
+        printNFA = false;
+        nfaOutput = "";
+        dfaOutput = "";
+        options = new CompileOptions();
+        engine = "dfa";
+        cacheSize = LazyDfa.DEFAULT_CACHE_SIZE;
+        options.setDfaStateLimit(DEFAULT_DFA_STATE_LIMIT);
+        threads = 1;
+        chunkSize = ParallelGrep.DEFAULT_CHUNK_SIZE;
+        maxOpenFiles = MultiFileGrep.DEFAULT_MAX_OPEN_FILES;
+        usePrefilter = true;
+
+        //Analyze the arguments and pull all the data based on the options.  All options come before the regex, and the
+        //file names for '-n' and '-d' can either be attached to the option or be the next argument
+        int i = 0;
+        while(i < args.length)
         {
-            printNFA = true;
-            nfaOutput = (args[0].substring(2)).trim();
-            if(option2.equals("-d"))
+            String option = args[i].length() > 2 ? args[i].substring(0, 2) : args[i];
+            if(option.equals("-n"))
+            {
+                printNFA = true;
+                nfaOutput = optionValue(args, i);
+                i += args[i].length() > 2 ? 1 : 2;
+            }
+            else if(option.equals("-d"))
             {
                 printDFA = true;
-                dfaOutput = (args[1].substring(2)).trim();
-                regexAsString = args[2];
-                inputFileName = args[3];
+                dfaOutput = optionValue(args, i);
+                i += args[i].length() > 2 ? 1 : 2;
+            }
+            else if(option.equals("-f"))
+            {
+                patternFile = optionValue(args, i);
+                i += args[i].length() > 2 ? 1 : 2;
+            }
+            else if(args[i].equals("-c") || args[i].equals("-l") || args[i].equals("-q"))
+            {
+                if(summary != 0 && summary != args[i].charAt(1))
+                    throw new Error("Only one of the options '-c', '-l' and '-q' can be used.");
+                summary = args[i].charAt(1);
+                i++;
+            }
+            else if(args[i].equals("-m"))
+            {
+                options.setMinimize(true);
+                i++;
+            }
+            else if(args[i].startsWith("--engine="))
+            {
+                engine = args[i].substring("--engine=".length());
+                if(!(engine.equals("dfa") || engine.equals("lazy") || engine.equals("nfa")))
+                    throw new Error("Unknown engine " + engine + ", the engines are dfa, lazy and nfa.");
+                i++;
+            }
+            else if(args[i].startsWith("--cache-size="))
+            {
+                cacheSize = Integer.parseInt(args[i].substring("--cache-size=".length()));
+                i++;
+            }
+            else if(args[i].startsWith("--dfa-limit="))
+            {
+                options.setDfaStateLimit(Integer.parseInt(args[i].substring("--dfa-limit=".length())));
+                i++;
+            }
+            else if(args[i].startsWith("--threads="))
+            {
+                threads = Integer.parseInt(args[i].substring("--threads=".length()));
+                i++;
+            }
+            else if(args[i].startsWith("--chunk-size="))
+            {
+                chunkSize = Long.parseLong(args[i].substring("--chunk-size=".length()));
+                i++;
+            }
+            else if(args[i].startsWith("--max-open="))
+            {
+                maxOpenFiles = Integer.parseInt(args[i].substring("--max-open=".length()));
+                i++;
+            }
+            else if(args[i].startsWith("--compile-to="))
+            {
+                compileTo = args[i].substring("--compile-to=".length());
+                i++;
+            }
+            else if(args[i].startsWith("--load="))
+            {
+                loadFile = args[i].substring("--load=".length());
+                i++;
+            }
+            else if(args[i].equals("--stats"))
+            {
+                printStats = true;
+                i++;
+            }
+            else if(args[i].equals("--search"))
+            {
+                search = true;
+                i++;
+            }
+            else if(args[i].equals("--glushkov"))
+            {
+                options.setGlushkov(true);
+                i++;
+            }
+            else if(args[i].equals("--no-prefilter"))
+            {
+                usePrefilter = false;
+                i++;
             }
-            else {
-                printDFA = false;
-                dfaOutput = "";
-                regexAsString = args[1];
-                inputFileName = args[2];
+            else
+                break;
+        }
+        //The regex is not given when the patterns come from a file or a compiled dfa, and the paths are not needed if the dfa is only being compiled
+        boolean needRegex = patternFile == null && loadFile == null;
+        if(args.length - i < (needRegex ? 1 : 0))
+        {
+            System.out.println("Usage: Grep [-n NFA-FILE] [-d DFA-FILE] [-m] [--engine=dfa|lazy|nfa] [--cache-size=N] [--dfa-limit=N] [--threads=N] [--chunk-size=BYTES] [--max-open=N] [--no-prefilter] [--search] [--compile-to=FILE] [--stats] [--glushkov] [-c|-l|-q] (REGEX | -f PATTERN-FILE | --load=FILE) [PATH...]");
+            return;
+        }
+        if(needRegex)
+            regexAsString = args[i++];
+        inputPaths = new ArrayList<>();
+        for(int p = i; p < args.length; p++)
+            inputPaths.add(Paths.get(args[p]));
+        if(inputPaths.size() > 1 && inputPaths.contains(STANDARD_INPUT))
+            throw new Error("Standard input can only be read on its own, not with other paths.");
+        //With no path standard input is read, unless the dfa is only being compiled
+        boolean pathsGiven = !inputPaths.isEmpty();
+        if(!pathsGiven)
+            inputPaths.add(STANDARD_INPUT);
+
+        //A loaded dfa is matched as it is, there is no regex to build anything else from
+        if(loadFile != null)
+        {
+            if(patternFile != null || search || compileTo != null || printNFA || printDFA)
+                throw new Error("The '--load' option can only be used with the scanning options.");
+            //The loaded dfa is already built, so nothing about how it is compiled or which engine runs it can be picked
+            if(options.isMinimize() || options.isGlushkov() || !engine.equals("dfa"))
+                throw new Error("The '--load' option always matches with the loaded DFA, so it can not be used with '-m', '--glushkov' or an engine other than dfa.");
+            CompiledDfa loaded;
+            try {
+                loaded = CompiledDfa.load(Paths.get(loadFile));
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+                System.out.println("There was an error trying to read the compiled DFA file");
+                return;
             }
+            engine = "dfa";
+            scanStats = new ScanStats(printStats);
+            matcher = new MeteredMatcher(loaded, scanStats);
+            run();
+            scanStats.finish();
+            if(printStats)
+                System.err.print(scanStats.summary());
+            if(summary == 'q')
+                System.exit(quietStatus());
+            return;
         }
-        else if(option1.equals("-d"))
+        if(compileTo != null)
         {
-            printNFA = false;
-            printDFA = true;
-            nfaOutput = "";
-            dfaOutput = (args[0].substring(2)).trim();
-            regexAsString = args[1];
-            inputFileName = args[2];
+            if(patternFile != null || search)
+                throw new Error("The '--compile-to' option can only be used with a single regex.");
+            engine = "dfa";
         }
-        else{
-            printDFA = false;
-            printNFA = false;
-            nfaOutput = "";
-            dfaOutput = "";
-            regexAsString = args[0];
-            inputFileName = args[1];
+        //The lazy engine builds its own states as it goes, so the full dfa is only built if it is needed
+        if(search)
+        {
+            if(patternFile != null)
+                throw new Error("The '--search' option can not be used with a pattern file.");
+            engine = "lazy";
         }
-        //Now that the inputs are determined, the language can be set
-        setLanguage();
-
-        //instantiates the Parser method with the argument of the string regex
-        inputParse = new Parser(regexAsString);
+        if(options.isGlushkov() && printNFA)
+            throw new Error("The '-n' option prints the Thompson NFA, which is not built with '--glushkov'.");
+        options.setBuildDfa(engine.equals("dfa") || printDFA);
 
-        //retrieves the nfa and dfa respectively that have been generated by the parser
-        nfa = inputParse.getNfaTree();
-        dfa = inputParse.getDfaTree();
+        //Compiles the pattern from the string regex, or from all the patterns of the pattern file
+        if(patternFile != null)
+        {
+            patterns = readPatterns(patternFile);
+            if(patterns == null)
+                return;
+            //Only the dfa keeps track of which pattern matched, so the pattern file is always run on the full dfa
+            engine = "dfa";
+            options.setBuildDfa(true);
+            usePrefilter = false;
+            pattern = Pattern.compile(patterns, options, Grep::inspect);
+            if(pattern.getCompiledDfa() == null)
+                throw new Error("The DFA for the pattern file has more than " + options.getDfaStateLimit() + " states, raise the limit with --dfa-limit.");
+        }
+        else
+            pattern = Pattern.compile(List.of(regexAsString), options, Grep::inspect);
+        if(compileTo != null)
+        {
+            CompiledDfa compiled = pattern.getCompiledDfa();
+            if(compiled == null)
+                throw new Error("The DFA has more than " + options.getDfaStateLimit() + " states, raise the limit with --dfa-limit to compile it.");
+            try {
+                compiled.save(Paths.get(compileTo));
+                System.err.println("Compiled DFA with " + compiled.getStateCount() + " states written to " + compileTo);
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+                System.out.println("There was an error trying to write the compiled DFA file");
+                return;
+            }
+            if(!pathsGiven)
+                return;
+        }
+        if(engine.equals("dfa") && pattern.getCompiledDfa() == null)
+        {
+            System.err.println("DFA has more than " + options.getDfaStateLimit() + " states, matching with the NFA instead");
+            engine = "nfa";
+        }
+        if(search)
+            reversedNfa = pattern.getIndexedNfa().reverse();
+        scanStats = new ScanStats(printStats);
+        matcher = newMatcher();
 
         //Call to the method that runs regex matching over the input file via the dfa
         run();
+        scanStats.finish();
+        if(printStats)
+            System.err.print(pattern.getStats().summary() + scanStats.summary());
+        LineMatcher engineMatcher = engineOf(matcher);
+        if(printStats && engineMatcher instanceof LazyDfa)
+        {
+            LazyDfa lazy = (LazyDfa) engineMatcher;
+            System.err.println("Lazy DFA cache: " + lazy.getCacheHits() + " hits, " + lazy.getCacheMisses() + " misses, "
+                    + lazy.getCacheFlushes() + " flushes, " + lazy.getCachedStates() + " states cached");
+        }
 
         //Checks the print dot file flags and calls the to dot method and file writer methods accordingly
-        if(printDFA)
-            writeToFile(dfaOutput, toDot(dfa));
+        if(printDFA && dfaTree != null)
+            writeToFile(dfaOutput, toDot(dfaTree));
         if(printNFA)
-            writeToFile(nfaOutput, toDot(nfa));
+            writeToFile(nfaOutput, toDot(nfaTree));
+        if(summary == 'q')
+            System.exit(quietStatus());
 
 
 
@@ -110,127 +365,309 @@ public class Grep
     }
 
     /**
-     * This is a getter method for the language of characters used in the input file
-     * @return the language of characters for the program
+     * Looks at the parser that compiled the pattern before the pattern lets go of it.  The state counts from before and
+     * after minimization are printed for '-m', and the nfa and dfa trees are kept only if '-n' or '-d' is going to print them
+     * @param parser the parser that compiled the pattern
      */
-    public static HashSet<Character> getLanguage()
+    private static void inspect(Parser parser)
     {
-        return language;
+        if(parser.getDfaMinimizer() != null)
+            System.err.println("DFA minimized from " + parser.getDfaMinimizer().getStatesBefore() + " to "
+                    + parser.getDfaMinimizer().getStatesAfter() + " states");
+        if(printNFA)
+            nfaTree = parser.getNfaTree();
+        if(printDFA)
+            dfaTree = parser.getDfaTree();
     }
 
     /**
-     * This is an internal helper-setter method that parses the input file and makes a set of all characters found in
-     * the input,which is the language of the dfa/nfa
+     * Helper that gets the value of an option that takes a file name, which is either attached to the option itself or
+     * is the argument after it
+     * @param args is the list of string arguments passed when calling the program
+     * @param i index of the option
+     * @return the value of the option
      */
-    public static void setLanguage()
+    private static String optionValue(String args[], int i)
     {
+        if(args[i].length() > 2)
+            return args[i].substring(2).trim();
+        if(i + 1 >= args.length)
+            throw new Error("The option " + args[i] + " needs a file name.");
+        return args[i + 1];
+    }
 
-        FileInputStream fileInput = null;
+    /**
+     * Makes a matcher for the chosen engine.  The compiled dfa never changes, so the same one is given out every time,
+     * while the lazy dfa and the nfa simulator keep state as they match, so each call makes a new one off of the shared nfa
+     * of the pattern.
+     * If there is a literal prefilter the engine is wrapped in it, and the outside is always wrapped in the scan counters
+     * @return matcher for the engine
+     */
+    private static LineMatcher newMatcher()
+    {
+        LineMatcher engineMatcher;
+        if(search)
+            engineMatcher = new DfaSearcher(pattern.getIndexedNfa(), reversedNfa, cacheSize);
+        else if(engine.equals("lazy"))
+            engineMatcher = new LazyDfa(pattern.getIndexedNfa(), cacheSize);
+        else if(engine.equals("nfa"))
+            engineMatcher = new NfaSimulator(pattern.getIndexedNfa());
+        else if(matcher != null)
+            return matcher;
+        else
+            engineMatcher = pattern.getCompiledDfa();
+        if(usePrefilter && pattern.getPrefilter() != null)
+            engineMatcher = new PrefilteredMatcher(engineMatcher, pattern.getPrefilter(), !search);
+        return new MeteredMatcher(engineMatcher, scanStats);
+    }
+
+    /**
+     * Takes the prefilter and scan counter wrappers off of a matcher to get to the engine inside
+     * @param lineMatcher a matcher from newMatcher
+     * @return the engine the matcher runs on
+     */
+    private static LineMatcher engineOf(LineMatcher lineMatcher)
+    {
+        if(lineMatcher instanceof MeteredMatcher)
+            lineMatcher = ((MeteredMatcher) lineMatcher).getEngine();
+        if(lineMatcher instanceof PrefilteredMatcher)
+            lineMatcher = ((PrefilteredMatcher) lineMatcher).getEngine();
+        return lineMatcher;
+    }
+
+    /**
+     * This is the helper method that handles the actual matching of the input to the dfa, based on the inputted regex.
+     * A single input file is scanned with scanFile, or handed to the parallel grep when there is more than one thread.
+     * More than one input, or a directory, is searched by the multi file grep, which puts the file name in front of
+     * every matching line.  With '-c', '-l' or '-q' only the summary of each file is printed
+     */
+    private static void run()
+    {
+        output = LineWriter.toStandardOutput();
+        if (summary != 0)
+        {
+            runSummary();
+            output.flush();
+            return;
+        }
+        output.println("The following lines from the input file match the regex: ");
+        if (patterns != null)
+        {
+            runPatterns();
+            output.flush();
+            return;
+        }
+        if (inputPaths.size() > 1 || Files.isDirectory(inputPaths.get(0)))
+        {
+            new MultiFileGrep(Grep::newMatcher, maxOpenFiles).run(inputPaths, output);
+            output.flush();
+            return;
+        }
+        Path input = inputPaths.get(0);
         try {
-            fileInput = new FileInputStream(inputFileName);
-            int r;
-            //Reads file until all characters are read
-            while ((r = fileInput.read()) != -1)
+            //Standard input can not be cut into chunks before it has been read, so it is always matched on one thread
+            if (threads > 1 && !input.equals(STANDARD_INPUT))
             {
-                //Check to make sure none of reserved, unescapable characters used fot the regex are in the file,as per the assignment.They cannot be added to the language
-                if(!(r == 40 || r == 41 || r == 42 || r == 124 || r == 10 ))
-                {
-                    char c = (char) r;
-                    language.add(c);
+                try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+                    new ParallelGrep(Grep::newMatcher, threads, chunkSize).run(channel, output);
                 }
-                //If any reserved characters are in the file, an error is thrown
-                else if((r == 40 || r == 41 || r == 42 || r == 124 ))
-                    throw new Error("FATAL ERROR, OPERATION ABORTED: The input file cannot contain the characters '(, ')' , '*' , or '|'.");
-
-
-
             }
-            fileInput.close();
-
+            else if (search)
+            {
+                DfaSearcher searcher = (DfaSearcher) engineOf(matcher);
+                scanPath(input, matcher, (buf, start, end) -> {
+                    int[] found = searcher.find(buf, start, end);
+                    output.matchedLine((found[0] - start) + "-" + (found[1] - start) + ":", buf, start, end);
+                });
+            }
+            else
+                scanPath(input, matcher, output);
+            output.flush();
         }
         catch (java.io.IOException e) {
+            output.flush();
             e.printStackTrace();
             System.out.println("There was an error trying to read the file input file");
         }
-
     }
 
     /**
-     * This is the helper method that handles the actual matching of the input to the dfa, based on the inputted regex
+     * Matches every input file against all the patterns of the pattern file at once.  Each matching line is printed after
+     * the numbers of the patterns it matches, and after its file name as well if there is more than one file.  The files
+     * are searched one after another
      */
-    private static void run()
+    private static void runPatterns()
     {
+        CompiledDfa tagged = (CompiledDfa) engineOf(matcher);
+        ArrayList<Path> files = new ArrayList<>();
+        for (Path path : inputPaths)
+            files.addAll(MultiFileGrep.listFiles(path));
+        boolean showFile = files.size() > 1 || Files.isDirectory(inputPaths.get(0));
+        for (Path file : files)
+        {
+            String prefix = showFile ? file + ":" : "";
+            try {
+                //Only the lines that matched something are run through the table a second time to find which patterns they matched
+                scanPath(file, matcher, (buf, start, end) -> {
+                    StringBuilder ids = new StringBuilder(prefix);
+                    int[] matched = tagged.matchedPatterns(buf, start, end);
+                    for (int k = 0; k < matched.length; k++)
+                        ids.append(k == 0 ? "" : ",").append(matched[k] + 1);
+                    output.matchedLine(ids.append(':').toString(), buf, start, end);
+                });
+            }
+            catch (java.io.IOException e) {
+                output.flush();
+                e.printStackTrace();
+                System.out.println("There was an error trying to read the file " + file);
+            }
+        }
+    }
 
-        FileInputStream fileInput2 = null;
-        BufferedReader buff = null;
-        InputStreamReader sr = null;
+    /**
+     * Counts the matching lines of every input file without printing them, for '-c', '-l' and '-q'.  The lines are only
+     * counted, so no String is made and nothing is written for them.  For '-l' and '-q' the counter is done at the first
+     * match, which stops the scan of the file there, and '-q' does not open any more files after the first match of all.
+     * More than one input, or a directory, is counted by the multi file grep, with the file name in front of each count,
+     * and a single file is counted by the parallel grep when there is more than one thread.  A file that can not be read
+     * is reported on stderr, never on the output
+     */
+    private static void runSummary()
+    {
+        long limit = summary == 'c' ? Long.MAX_VALUE : 1;
+        if (inputPaths.size() > 1 || Files.isDirectory(inputPaths.get(0)))
+        {
+            MultiFileGrep multiFile = new MultiFileGrep(Grep::newMatcher, maxOpenFiles);
+            if (multiFile.count(inputPaths, limit, summary == 'q', (file, count) -> printSummary(file, count, true)))
+                anyMatched = true;
+            if (multiFile.getUnreadableCount() > 0)
+                anyError = true;
+            return;
+        }
+        Path input = inputPaths.get(0);
+        long count;
         try {
-            fileInput2 = new FileInputStream(inputFileName);
-            sr = new InputStreamReader(fileInput2);
-            buff =  new BufferedReader(sr);
-            String line =  null;
-            System.out.println("The following lines from the input file match the regex: ");
-
-            //gets the text from the file line by line, and does so until there are no more lines in the file.Line seperators are not included in the string
-            while ((line = buff.readLine()) != null)
+            if (threads > 1 && !input.equals(STANDARD_INPUT))
             {
-                /*There is a check to make sure there is no non-ascii character in the line trying to be matched, because
-                *the language cannot hold non-ascii characters, and trying to match one would cause a null pointer exception,
-                * plus they are not allowed in the scope of this project.
-                */
-                boolean invalidChar = false;
-                for(char c: line.toCharArray())
-                {
-                    int asciiVal = (int)c;
-                    if (asciiVal < 0 || asciiVal > 255)
-                        invalidChar = true;
-                }
-
-                //As long as the line contains no invalid characters, the matcher method is called, which does the actual matching with the dfa
-                if(! invalidChar) {
-                    if (match(line)) {
-                        //If a line does match, it is printed to the output
-                        System.out.println(line);
-                    }
+                try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+                    count = new ParallelGrep(Grep::newMatcher, threads, chunkSize).count(channel, limit);
                 }
+            }
+            else
+            {
+                MatchCounter counter = new MatchCounter(limit);
+                scanPath(input, matcher, counter);
+                count = counter.getCount();
+            }
+        }
+        catch (java.io.IOException e) {
+            System.err.println("There was an error trying to read the file " + input);
+            anyError = true;
+            return;
+        }
+        if (count > 0)
+            anyMatched = true;
+        printSummary(input, count, false);
+    }
 
+    /**
+     * Prints the summary of one file for '-c' and '-l', which is nothing for '-q'
+     * @param file the file
+     * @param count number of matching lines in it, which stops at 1 for '-l'
+     * @param showFile true if the file name is put in front of the count
+     */
+    private static void printSummary(Path file, long count, boolean showFile)
+    {
+        if (summary == 'c')
+            output.println(showFile ? file + ":" + count : Long.toString(count));
+        else if (summary == 'l' && count > 0)
+            output.println(file.toString());
+    }
 
+    /**
+     * Works out the exit status for '-q' the way grep does, where a match wins over an error
+     * @return 0 if anything matched, otherwise 2 if some input could not be read and 1 if not
+     */
+    private static int quietStatus()
+    {
+        if (anyMatched)
+            return 0;
+        return anyError ? 2 : 1;
+    }
 
+    /**
+     * Reads the patterns out of a pattern file, one regex per line, leaving out blank lines.  The file is read as UTF-8,
+     * the same as the input the patterns are matched against
+     * @param fileName name of the pattern file
+     * @return list of patterns, or null if the file could not be read
+     */
+    private static List<String> readPatterns(String fileName)
+    {
+        try {
+            List<String> read = new ArrayList<>();
+            for (String line : Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8))
+            {
+                if (!line.isEmpty())
+                    read.add(line);
             }
-            fileInput2.close();
+            if (read.isEmpty())
+                throw new Error("The pattern file " + fileName + " has no patterns in it.");
+            return read;
         }
-        catch (java.io.IOException e) {
+        catch (IOException e) {
             e.printStackTrace();
-            System.out.println("There was an error trying to read the file input file");
+            System.out.println("There was an error trying to read the pattern file");
+            return null;
         }
     }
 
     /**
-     * This method traverses the dfa by reading a line from the input character by character, starting at the start node.
-     * After all the inputs are read,the current state is checked to see if it is an accpet state.  If it is an accpet,
-     * true is returned.  If it is not, false is returned
-     * @param line is a String of a single line form the file to be checked for a regex match
-     * @return boolean true if matches regex, false otherwise
+     * Scans a whole input with a matcher.  A file is memory mapped and scanned with scanFile, and standard input is read
+     * through a stream matcher in large pieces, so a stream of any length is matched in the same amount of memory
+     * @param path path of the file, or the path for standard input
+     * @param lineMatcher engine to match the lines with
+     * @param handler callback for matching lines
+     * @throws IOException if the input cannot be read
      */
-    private static boolean match(String line)
+    static void scanPath(Path path, LineMatcher lineMatcher, LineHandler handler) throws IOException
     {
-        //Node holder that is set to the start node of the dfa
-        FiniteAutomataNode current;
-        current = dfa.getStartNode();
-
-        //goes through every single character in the line
-        for(Character c: line.toCharArray())
+        if (path.equals(STANDARD_INPUT))
         {
-
-                //sets  the current node to the node mapped to that transition
-                current = current.getMappedValue(c);
-
-
-
+            new StreamMatcher(lineMatcher, handler).readAll(new FileInputStream(FileDescriptor.in));
+            return;
         }
-            //after all characters are done, returns if the current node is an accept node
-            return current.getAccept();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            scanFile(channel, lineMatcher, handler);
+        }
+    }
 
+    /**
+     * Scans a whole file with a matcher.  The file is memory mapped and the matching engine runs over the raw bytes,
+     * finding the line breaks as it goes, so no String is made for a line unless the handler makes one.  Files bigger than
+     * one mapping are mapped a window at a time, and a line that runs past the end of a window is scanned again at the
+     * start of the next one.  The scan stops early once the handler says it is done
+     * @param channel open channel of the file
+     * @param lineMatcher engine to match the lines with
+     * @param handler callback for matching lines
+     * @throws IOException if the file cannot be read
+     */
+    static void scanFile(FileChannel channel, LineMatcher lineMatcher, LineHandler handler) throws IOException
+    {
+        long size = channel.size();
+        long position = 0;
+        while (position < size)
+        {
+            long length = Math.min(size - position, MAP_WINDOW);
+            boolean endOfInput = position + length == size;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            handler.windowMapped(window, channel, position);
+            int consumed = lineMatcher.scanLines(window, 0, (int) length, endOfInput, handler);
+            if (handler.isDone())
+                return;
+            if (consumed == 0 && !endOfInput)
+                throw new Error("FATAL ERROR, OPERATION ABORTED: A line in the input file is longer than " + MAP_WINDOW + " bytes.");
+            position += consumed;
+        }
     }
 
     /**
@@ -239,7 +676,7 @@ public class Grep
      */
     private static void testAllPrinter()
     {
-        for(FiniteAutomataNode fan : dfa.getAllNodes())
+        for(FiniteAutomataNode fan : dfaTree.getAllNodes())
         {
             System.out.println("Node : " + fan.getName() + ":");
             System.out.println("The characters that transition out of this node are as follows: ");
@@ -248,7 +685,7 @@ public class Grep
                 System.out.print(c + ", ");
             }
 
-            System.out.print("\n Start State: " + (fan.getName().equals(dfa.getStartNode().getName())) + "\n");
+            System.out.print("\n Start State: " + (fan.getName().equals(dfaTree.getStartNode().getName())) + "\n");
 
 
         }
@@ -290,7 +727,7 @@ public class Grep
             for(FiniteAutomataNode destinationNode: new HashSet<>(fan.getValues()))
             {
                 String transChars = "";
-                //Loops through all characters that the current node transitions on(For DFA this is all chars in language).
+                //Loops through all characters that the current node transitions on(For DFA this is all chars in the regex).
                 // This makes a string listing all characters that transition between two particular nodes
                 for(Character c: fan.getKeys())
                 {
@@ -302,6 +739,12 @@ public class Grep
                 subTransitions += "\"" + name + "\" -> \""  + destinationNode.getName() + "\" [ label = \"" + transChars + "\" ];\n";
             }
 
+            //Character class transitions of the nfa are labeled with their byte ranges
+            for(Map.Entry<ByteRanges, FiniteAutomataNode> ranges : fan.getRangeTransitions().entrySet())
+            {
+                subTransitions += "\"" + name + "\" -> \""  + ranges.getValue().getName() + "\" [ label = \"" + ranges.getKey() + "\" ];\n";
+            }
+
             //This adds all the epsilon transition by scanning the epsilon transition list
             for(FiniteAutomataNode epsilons : fan.getEpsilonTransitions())
             {
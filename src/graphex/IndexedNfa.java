@@ -0,0 +1,738 @@
+package graphex;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * This is a numbered, array based copy of an NFA tree that the engines which run straight off of the NFA use.  Every node
+ * is given a state number, character transitions are stored in flat arrays as ranges of bytes, so a character class is
+ * one transition like a single character is, and the epsilon closure of every state is
+ * worked out once up front and stored as a bitset, so a set of NFA states is just an array of longs.  The table of
+ * closures grows with the square of the number of states, so for a very large NFA, like the one for a generated
+ * alternation of thousands of words, it is not made and each closure is walked from the epsilon transitions when it is
+ * needed instead.  An NFA with no epsilon transitions at all, like the position automaton, needs no table either.
+ * When the NFA is small enough there is also a follow table, which lets a whole set of states be stepped on a byte eight
+ * states at a time instead of one edge at a time.  Once built the object is never changed, so it can be shared.
+ * @author Ryan Bertsche
+ */
+public class IndexedNfa
+{
+    //Largest number of longs the table of closures is allowed to take, which is 32MB
+    private static final long MAX_CLOSURE_WORDS = 1L << 22;
+
+    //Largest number of longs the follow table is allowed to take, which is 8MB, or about 1400 states
+    private static final long MAX_FOLLOW_WORDS = 1L << 20;
+
+    //Number of states looked up at once in the follow table, and the number of different sets of that many states
+    private static final int CHUNK_BITS = 8;
+    private static final int CHUNK_VALUES = 1 << CHUNK_BITS;
+
+    //Number of states in the nfa
+    private final int stateCount;
+
+    //The NFA node for every state number, null once they are let go of with withoutNodes
+    private final FiniteAutomataNode[] nodes;
+
+    //Number of longs needed to hold a bitset with one bit per state
+    private final int words;
+
+    //State number of the start state
+    private final int startState;
+
+    //Bitset of the accepting states
+    private final long[] accept;
+
+    //Character transitions stored flat.  The transitions out of state s are at indexes edgeStart[s] up to edgeStart[s + 1]
+    //of edgeLow and edgeHigh, which hold the first and last byte the transition is on, and edgeTarget, which holds the
+    //state transitioned to.  A transition on a single character has the same first and last byte
+    private final int[] edgeStart;
+    private final int[] edgeLow;
+    private final int[] edgeHigh;
+    private final int[] edgeTarget;
+
+    //Epsilon transitions stored flat the same way, the epsilon transitions out of state s are at indexes epsilonStart[s]
+    //up to epsilonStart[s + 1] of epsilonTarget
+    private final int[] epsilonStart;
+    private final int[] epsilonTarget;
+
+    //Epsilon closure of every state, the closure of state s is the bitset at closures[s * words] up to closures[(s + 1) * words].
+    //It is null if the NFA is too big for the table, and the closures are walked when needed
+    private final long[] closures;
+
+    //Follow table for stepping a whole set of states at once.  The states are cut into chunks of eight, and for chunk j and
+    //every set v of states in it, the bitset at follow[(j * 256 + v) * words] is every state the states of v move to, on any
+    //byte, with the epsilon closures added.  It is null if the NFA is too big for it or its transitions can't be looked up
+    //this way, which is when some state moves to different states on different bytes and some state is entered on
+    //different bytes from different states
+    private final long[] follow;
+
+    //True if the follow table is masked with the states a byte enters after the lookup, for an NFA where every transition
+    //into a state is on the same bytes, like the position automaton.  False if the states are masked with the ones that
+    //have a transition on the byte before the lookup, for an NFA where every state moves to a single state, like the
+    //Thompson NFA
+    private final boolean maskEntered;
+
+    /**
+     * Constructor that numbers all the nodes of the NFA tree, copies the transitions into arrays and computes the closures
+     * @param nfaTree is the NFA tree returned by the parser
+     */
+    public IndexedNfa(FiniteAutomataTree nfaTree)
+    {
+        nodes = nfaTree.getAllNodes().toArray(new FiniteAutomataNode[0]);
+        IdentityHashMap<FiniteAutomataNode, Integer> numbers = new IdentityHashMap<>();
+        for(int s = 0; s < nodes.length; s++)
+            numbers.put(nodes[s], s);
+        stateCount = nodes.length;
+        words = Math.max(1, (stateCount + 63) >>> 6);
+        startState = numbers.get(nfaTree.getStartNode());
+
+        accept = new long[words];
+        edgeStart = new int[stateCount + 1];
+        int edgeCount = 0;
+        for(int s = 0; s < stateCount; s++)
+        {
+            if(nodes[s].getAccept())
+                accept[s >>> 6] |= 1L << s;
+            edgeCount += nodes[s].getKeys().size();
+            for(ByteRanges ranges : nodes[s].getRangeTransitions().keySet())
+                edgeCount += ranges.getRangeCount();
+        }
+        edgeLow = new int[edgeCount];
+        edgeHigh = new int[edgeCount];
+        edgeTarget = new int[edgeCount];
+        int e = 0;
+        for(int s = 0; s < stateCount; s++)
+        {
+            edgeStart[s] = e;
+            for(Character c : nodes[s].getKeys())
+            {
+                edgeLow[e] = c;
+                edgeHigh[e] = c;
+                edgeTarget[e] = numbers.get(nodes[s].getMappedValue(c));
+                e++;
+            }
+            for(Map.Entry<ByteRanges, FiniteAutomataNode> transition : nodes[s].getRangeTransitions().entrySet())
+            {
+                ByteRanges ranges = transition.getKey();
+                for(int k = 0; k < ranges.getRangeCount(); k++)
+                {
+                    edgeLow[e] = ranges.getLow(k);
+                    edgeHigh[e] = ranges.getHigh(k);
+                    edgeTarget[e] = numbers.get(transition.getValue());
+                    e++;
+                }
+            }
+        }
+        edgeStart[stateCount] = e;
+
+        epsilonStart = new int[stateCount + 1];
+        int epsilonCount = 0;
+        for(int s = 0; s < stateCount; s++)
+            epsilonCount += nodes[s].getEpsilonTransitions().size();
+        epsilonTarget = new int[epsilonCount];
+        e = 0;
+        for(int s = 0; s < stateCount; s++)
+        {
+            epsilonStart[s] = e;
+            for(FiniteAutomataNode fan : nodes[s].getEpsilonTransitions())
+                epsilonTarget[e++] = numbers.get(fan);
+        }
+        epsilonStart[stateCount] = e;
+
+        closures = computeClosures();
+        boolean singleTargets = hasSingleTargets();
+        maskEntered = !singleTargets && hasEntryLabels();
+        follow = computeFollow(singleTargets);
+    }
+
+    /**
+     * Constructor for an NFA with no epsilon transitions whose transitions are already numbered, which is how the
+     * GlushkovBuilder hands over the position automaton.  The transitions out of state s are at indexes edgeStart[s] up to
+     * edgeStart[s + 1] of edgeLow, edgeHigh and edgeTarget, and the accept states are the ones whose nodes are accepting
+     * @param nodes the node for every state number
+     * @param startState state number of the start state
+     * @param edgeStart where the transitions of each state start, with one more entry at the end
+     * @param edgeLow first byte of every transition
+     * @param edgeHigh last byte of every transition
+     * @param edgeTarget state every transition goes to
+     */
+    IndexedNfa(FiniteAutomataNode[] nodes, int startState, int[] edgeStart, int[] edgeLow, int[] edgeHigh, int[] edgeTarget)
+    {
+        this.nodes = nodes;
+        this.startState = startState;
+        this.edgeStart = edgeStart;
+        this.edgeLow = edgeLow;
+        this.edgeHigh = edgeHigh;
+        this.edgeTarget = edgeTarget;
+        stateCount = nodes.length;
+        words = Math.max(1, (stateCount + 63) >>> 6);
+        accept = new long[words];
+        for(int s = 0; s < stateCount; s++)
+        {
+            if(nodes[s].getAccept())
+                accept[s >>> 6] |= 1L << s;
+        }
+        epsilonStart = new int[stateCount + 1];
+        epsilonTarget = new int[0];
+        closures = computeClosures();
+        boolean singleTargets = hasSingleTargets();
+        maskEntered = !singleTargets && hasEntryLabels();
+        follow = computeFollow(singleTargets);
+    }
+
+    /**
+     * Constructor for the reverse of an NFA, only used by reverse.  Every transition, character and epsilon, points the
+     * other way.  The accept states of the original can't all be the start, so a new start state is added at the end with
+     * an epsilon transition to each of them, and the original start state is the only accept state
+     * @param forward the NFA being reversed
+     */
+    private IndexedNfa(IndexedNfa forward)
+    {
+        int n = forward.stateCount;
+        stateCount = n + 1;
+        words = Math.max(1, (stateCount + 63) >>> 6);
+        if(forward.nodes == null)
+            nodes = null;
+        else
+        {
+            nodes = Arrays.copyOf(forward.nodes, stateCount);
+            nodes[n] = new FiniteAutomataNode(false);
+        }
+        startState = n;
+        accept = new long[words];
+        accept[forward.startState >>> 6] |= 1L << forward.startState;
+
+        //Count the transitions into every state, which become the transitions out of it
+        edgeStart = new int[stateCount + 1];
+        for(int e = 0; e < forward.edgeTarget.length; e++)
+            edgeStart[forward.edgeTarget[e] + 1]++;
+        for(int s = 0; s < stateCount; s++)
+            edgeStart[s + 1] += edgeStart[s];
+        edgeLow = new int[forward.edgeLow.length];
+        edgeHigh = new int[forward.edgeHigh.length];
+        edgeTarget = new int[forward.edgeTarget.length];
+        int[] fill = Arrays.copyOf(edgeStart, stateCount);
+        for(int s = 0; s < n; s++)
+        {
+            for(int e = forward.edgeStart[s]; e < forward.edgeStart[s + 1]; e++)
+            {
+                int slot = fill[forward.edgeTarget[e]]++;
+                edgeLow[slot] = forward.edgeLow[e];
+                edgeHigh[slot] = forward.edgeHigh[e];
+                edgeTarget[slot] = s;
+            }
+        }
+
+        //Same for the epsilon transitions, plus the ones from the new start state to every original accept state
+        epsilonStart = new int[stateCount + 1];
+        for(int e = 0; e < forward.epsilonTarget.length; e++)
+            epsilonStart[forward.epsilonTarget[e] + 1]++;
+        int acceptCount = 0;
+        for(int s = 0; s < n; s++)
+        {
+            if(forward.isAccept(s))
+                acceptCount++;
+        }
+        epsilonStart[n + 1] = acceptCount;
+        for(int s = 0; s < stateCount; s++)
+            epsilonStart[s + 1] += epsilonStart[s];
+        epsilonTarget = new int[forward.epsilonTarget.length + acceptCount];
+        fill = Arrays.copyOf(epsilonStart, stateCount);
+        for(int s = 0; s < n; s++)
+        {
+            for(int e = forward.epsilonStart[s]; e < forward.epsilonStart[s + 1]; e++)
+                epsilonTarget[fill[forward.epsilonTarget[e]]++] = s;
+            if(forward.isAccept(s))
+                epsilonTarget[fill[n]++] = s;
+        }
+
+        closures = computeClosures();
+        boolean singleTargets = hasSingleTargets();
+        maskEntered = !singleTargets && hasEntryLabels();
+        follow = computeFollow(singleTargets);
+    }
+
+    /**
+     * Constructor for a copy that shares every table with the original but has its own array of nodes, only used by
+     * withoutNodes
+     * @param original the NFA being copied
+     * @param nodes the node for every state number of the copy, or null for none
+     */
+    private IndexedNfa(IndexedNfa original, FiniteAutomataNode[] nodes)
+    {
+        this.nodes = nodes;
+        stateCount = original.stateCount;
+        words = original.words;
+        startState = original.startState;
+        accept = original.accept;
+        edgeStart = original.edgeStart;
+        edgeLow = original.edgeLow;
+        edgeHigh = original.edgeHigh;
+        edgeTarget = original.edgeTarget;
+        epsilonStart = original.epsilonStart;
+        epsilonTarget = original.epsilonTarget;
+        closures = original.closures;
+        follow = original.follow;
+        maskEntered = original.maskEntered;
+    }
+
+    /**
+     * Makes a copy of this NFA that does not hold on to the nodes of the tree it was built from.  The nodes are only needed
+     * to build the dfa out of, so a compiled Pattern keeps this copy and the whole node graph can be garbage collected.
+     * The tables are shared, not copied, since neither one ever changes them
+     * @return the NFA without its nodes, which getNode can not be called on
+     */
+    IndexedNfa withoutNodes()
+    {
+        return nodes == null ? this : new IndexedNfa(this, null);
+    }
+
+    /**
+     * Makes the reverse of this NFA, which accepts exactly the reversed strings of this one.  Reading a string backwards
+     * through the reverse is how the searcher finds where a match starts
+     * @return reversed NFA
+     */
+    public IndexedNfa reverse()
+    {
+        return new IndexedNfa(this);
+    }
+
+    /**
+     * Works out the epsilon closure of every state with an iterative depth first search using an explicit stack.  The
+     * closure bitset itself is the visited set, so epsilon cycles, like the ones nested stars make, are only walked once
+     * @return the table of closures, or null if the NFA has too many states for it or no epsilon transitions to need it
+     */
+    private long[] computeClosures()
+    {
+        if((long) stateCount * words > MAX_CLOSURE_WORDS || epsilonTarget.length == 0)
+            return null;
+        long[] table = new long[stateCount * words];
+        int[] stack = new int[stateCount];
+        for(int s = 0; s < stateCount; s++)
+        {
+            int base = s * words;
+            int top = 0;
+            table[base + (s >>> 6)] |= 1L << s;
+            stack[top++] = s;
+            while(top > 0)
+            {
+                int current = stack[--top];
+                for(int i = epsilonStart[current]; i < epsilonStart[current + 1]; i++)
+                {
+                    int next = epsilonTarget[i];
+                    long bit = 1L << next;
+                    if((table[base + (next >>> 6)] & bit) == 0)
+                    {
+                        table[base + (next >>> 6)] |= bit;
+                        stack[top++] = next;
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Checks if every state moves to at most one state, whatever byte it is on, so the states a set moves to on a byte are
+     * the follow of the states in it that have a transition on that byte
+     * @return true if no state has transitions to two different states
+     */
+    private boolean hasSingleTargets()
+    {
+        for(int s = 0; s < stateCount; s++)
+        {
+            for(int e = edgeStart[s] + 1; e < edgeStart[s + 1]; e++)
+            {
+                if(edgeTarget[e] != edgeTarget[edgeStart[s]])
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if there are no epsilon transitions and every state is entered on the same bytes from every state that goes
+     * to it, so the states a set moves to on a byte are the follow of the whole set cut down to the states that byte enters
+     * @return true if the transitions into every state are all on the same bytes
+     */
+    private boolean hasEntryLabels()
+    {
+        if(epsilonTarget.length != 0)
+            return false;
+        long[][] entered = new long[stateCount][];
+        HashMap<Integer, long[]> labels = new HashMap<>();
+        for(int s = 0; s < stateCount; s++)
+        {
+            labels.clear();
+            for(int e = edgeStart[s]; e < edgeStart[s + 1]; e++)
+            {
+                long[] label = labels.computeIfAbsent(edgeTarget[e], t -> new long[256 / 64]);
+                for(int b = edgeLow[e]; b <= edgeHigh[e]; b++)
+                    label[b >>> 6] |= 1L << b;
+            }
+            for(Map.Entry<Integer, long[]> label : labels.entrySet())
+            {
+                int target = label.getKey();
+                if(entered[target] == null)
+                    entered[target] = label.getValue();
+                else if(!Arrays.equals(entered[target], label.getValue()))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the follow table, if the NFA is small enough and one of the two ways of masking it works for its transitions.
+     * The entry for a single state is the closures of the states it moves to, and the entry for a bigger set is the entry
+     * for its lowest state ORed with the entry for the rest, which was already made since it is a smaller number
+     * @param singleTargets true if every state moves to at most one state
+     * @return the follow table, or null if it is not made
+     */
+    private long[] computeFollow(boolean singleTargets)
+    {
+        long chunks = (stateCount + CHUNK_BITS - 1) / CHUNK_BITS;
+        if(chunks * CHUNK_VALUES * words > MAX_FOLLOW_WORDS || !(singleTargets || maskEntered))
+            return null;
+        long[] table = new long[(int) (chunks * CHUNK_VALUES * words)];
+        long[] row = new long[words];
+        for(int s = 0; s < stateCount; s++)
+        {
+            Arrays.fill(row, 0L);
+            for(int e = edgeStart[s]; e < edgeStart[s + 1]; e++)
+                addClosure(edgeTarget[e], row);
+            int base = ((s / CHUNK_BITS) * CHUNK_VALUES + (1 << (s % CHUNK_BITS))) * words;
+            System.arraycopy(row, 0, table, base, words);
+        }
+        for(int j = 0; j < chunks; j++)
+        {
+            for(int v = 3; v < CHUNK_VALUES; v++)
+            {
+                int lowest = v & -v;
+                if(lowest == v)
+                    continue;
+                int to = (j * CHUNK_VALUES + v) * words;
+                int first = (j * CHUNK_VALUES + lowest) * words;
+                int rest = (j * CHUNK_VALUES + (v ^ lowest)) * words;
+                for(int w = 0; w < words; w++)
+                    table[to + w] = table[first + w] | table[rest + w];
+            }
+        }
+        return table;
+    }
+
+    /**
+     * ORs the epsilon closure of a state into a bitset of states.  Without the table of closures the closure is walked
+     * from the epsilon transitions, using the set itself as the visited set.  That only works because every set passed
+     * in is built up out of whole closures, so a state that is already in it has everything its closure reaches in it too
+     * @param state the state whose closure is added
+     * @param set bitset of states, with at least getWords() longs, holding nothing but whole closures
+     */
+    public void addClosure(int state, long[] set)
+    {
+        addClosure(state, set, null);
+    }
+
+    /**
+     * ORs the epsilon closure of a state into a bitset of states the same way, and counts the closure in the compile stats
+     * if it had to be walked, which is how the parser measures the closure work of the subset construction
+     * @param state the state whose closure is added
+     * @param set bitset of states, with at least getWords() longs, holding nothing but whole closures
+     * @param stats stats the walked closures are counted in, or null to not count them
+     */
+    void addClosure(int state, long[] set, CompileStats stats)
+    {
+        if(closures != null)
+        {
+            int base = state * words;
+            for(int w = 0; w < words; w++)
+                set[w] |= closures[base + w];
+            return;
+        }
+        if((set[state >>> 6] & (1L << state)) != 0)
+            return;
+        set[state >>> 6] |= 1L << state;
+        if(epsilonStart[state] == epsilonStart[state + 1])
+            return;
+        if(stats != null)
+            stats.addClosures(1);
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = state;
+        while(top > 0)
+        {
+            int current = stack[--top];
+            for(int i = epsilonStart[current]; i < epsilonStart[current + 1]; i++)
+            {
+                int next = epsilonTarget[i];
+                long bit = 1L << next;
+                if((set[next >>> 6] & bit) == 0)
+                {
+                    set[next >>> 6] |= bit;
+                    if(top == stack.length)
+                        stack = Arrays.copyOf(stack, top * 2);
+                    stack[top++] = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * Works out the set of states reached from a set of states on one input character, including epsilon closure
+     * @param from bitset of states the input is read from
+     * @param c the input character
+     * @param to bitset that the reached states are ORed into, it is not cleared first
+     * @return true if any state was reached
+     */
+    public boolean step(long[] from, int c, long[] to)
+    {
+        boolean reached = false;
+        for(int w = 0; w < words; w++)
+        {
+            long bits = from[w];
+            while(bits != 0)
+            {
+                int s = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                for(int e = edgeStart[s]; e < edgeStart[s + 1]; e++)
+                {
+                    if(c >= edgeLow[e] && c <= edgeHigh[e])
+                    {
+                        addClosure(edgeTarget[e], to);
+                        reached = true;
+                    }
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Works out the same set of states as step, but only looks at the states that are in both the from set and the mask,
+     * which should be the states that have a transition on the character.  This skips over every active state that
+     * cannot move on the character a whole word at a time
+     * @param from bitset of states the input is read from
+     * @param mask bitset of the states with a transition on c, from getLabelMask
+     * @param c the input character
+     * @param to bitset that the reached states are ORed into, it is not cleared first
+     * @return true if any state was reached
+     */
+    public boolean step(long[] from, long[] mask, int c, long[] to)
+    {
+        return step(from, mask, c, to, null);
+    }
+
+    /**
+     * Works out the same set of states as the masked step, and counts every closure that had to be walked in the compile
+     * stats, for the subset construction
+     * @param from bitset of states the input is read from
+     * @param mask bitset of the states with a transition on c, from getLabelMask
+     * @param c the input character
+     * @param to bitset that the reached states are ORed into, it is not cleared first
+     * @param stats stats the walked closures are counted in, or null to not count them
+     * @return true if any state was reached
+     */
+    boolean step(long[] from, long[] mask, int c, long[] to, CompileStats stats)
+    {
+        boolean reached = false;
+        for(int w = 0; w < words; w++)
+        {
+            long bits = from[w] & mask[w];
+            while(bits != 0)
+            {
+                int s = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                for(int e = edgeStart[s]; e < edgeStart[s + 1]; e++)
+                {
+                    if(c >= edgeLow[e] && c <= edgeHigh[e])
+                    {
+                        addClosure(edgeTarget[e], to, stats);
+                        reached = true;
+                    }
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Checks if there is a follow table, so parallelStep can be used
+     * @return true if the NFA has a follow table
+     */
+    public boolean hasFollowTable()
+    {
+        return follow != null;
+    }
+
+    /**
+     * Makes the mask that parallelStep needs for a character.  That is the states with a transition on it if the states
+     * are masked before the lookup, or the states that are entered on it if the follow is masked after the lookup
+     * @param c the character
+     * @return bitset mask for parallelStep
+     */
+    public long[] getStepMask(int c)
+    {
+        if(!maskEntered)
+            return getLabelMask(c);
+        long[] mask = new long[words];
+        for(int e = 0; e < edgeTarget.length; e++)
+        {
+            if(c >= edgeLow[e] && c <= edgeHigh[e])
+                mask[edgeTarget[e] >>> 6] |= 1L << edgeTarget[e];
+        }
+        return mask;
+    }
+
+    /**
+     * Works out the same set of states as step, eight states at a time, with one lookup in the follow table for every
+     * byte of every word of the set that has a state in it.  There is no edge or closure to walk, the closures are already
+     * in the table, so a step is just ANDs and ORs of whole words.  There must be a follow table
+     * @param from bitset of states the input is read from
+     * @param mask bitset from getStepMask for the input character
+     * @param to bitset that the reached states are put in, which must be empty
+     * @return true if any state was reached
+     */
+    public boolean parallelStep(long[] from, long[] mask, long[] to)
+    {
+        boolean reached = false;
+        for(int w = 0; w < words; w++)
+        {
+            long bits = maskEntered ? from[w] : from[w] & mask[w];
+            for(int j = w * (64 / CHUNK_BITS); bits != 0; j++, bits >>>= CHUNK_BITS)
+            {
+                int v = (int) bits & (CHUNK_VALUES - 1);
+                if(v == 0)
+                    continue;
+                int base = (j * CHUNK_VALUES + v) * words;
+                for(int x = 0; x < words; x++)
+                    to[x] |= follow[base + x];
+                reached = true;
+            }
+        }
+        if(maskEntered && reached)
+        {
+            reached = false;
+            for(int w = 0; w < words; w++)
+            {
+                to[w] &= mask[w];
+                reached |= to[w] != 0;
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Makes the bitset of all states that have a transition on a character
+     * @param c the character
+     * @return bitset of states with a transition on c
+     */
+    public long[] getLabelMask(int c)
+    {
+        long[] mask = new long[words];
+        for(int s = 0; s < stateCount; s++)
+        {
+            for(int e = edgeStart[s]; e < edgeStart[s + 1]; e++)
+            {
+                if(c >= edgeLow[e] && c <= edgeHigh[e])
+                    mask[s >>> 6] |= 1L << s;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Cuts the byte values into intervals where every byte of an interval is in exactly the same transitions, so all of
+     * them move any set of states to the same place.  The cuts are at the first byte of every transition and right after
+     * its last byte.  The subset construction only has to step once for each interval instead of once for every byte
+     * @return sorted first bytes of the intervals, starting with 0, followed by 256, so interval k is from entry k up to
+     * but not including entry k + 1
+     */
+    public int[] getByteIntervals()
+    {
+        BitSet cuts = new BitSet(257);
+        cuts.set(0);
+        cuts.set(256);
+        for(int e = 0; e < edgeLow.length; e++)
+        {
+            cuts.set(edgeLow[e]);
+            cuts.set(edgeHigh[e] + 1);
+        }
+        return cuts.stream().toArray();
+    }
+
+    /**
+     * Checks if a set of states has any accepting state in it
+     * @param set bitset of states
+     * @return true if any state in the set is accepting
+     */
+    public boolean anyAccept(long[] set)
+    {
+        for(int w = 0; w < words; w++)
+        {
+            if((set[w] & accept[w]) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a single state is an accept state
+     * @param state state number
+     * @return true if the state accepts
+     */
+    public boolean isAccept(int state)
+    {
+        return (accept[state >>> 6] & (1L << state)) != 0;
+    }
+
+    /**
+     * Getter for the number of states
+     * @return number of NFA states
+     */
+    public int getStateCount()
+    {
+        return stateCount;
+    }
+
+    /**
+     * Getter for the number of closures worked out up front for the table of closures
+     * @return one for every state if the table was made, 0 if the closures are walked when needed or there are none
+     */
+    public int getTableClosures()
+    {
+        return closures == null ? 0 : stateCount;
+    }
+
+    /**
+     * Getter for the size of a state bitset
+     * @return number of longs in a bitset with one bit per state
+     */
+    public int getWords()
+    {
+        return words;
+    }
+
+    /**
+     * Getter for the NFA node a state number stands for
+     * @param state state number
+     * @return the NFA node, which is an error if the nodes were let go of with withoutNodes
+     */
+    public FiniteAutomataNode getNode(int state)
+    {
+        if(nodes == null)
+            throw new Error("The NFA nodes are not kept once the pattern is compiled.");
+        return nodes[state];
+    }
+
+    /**
+     * Getter for the start state
+     * @return state number of the start state
+     */
+    public int getStartState()
+    {
+        return startState;
+    }
+}
@@ -0,0 +1,322 @@
+package graphex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * This is a DFA that is built while the input is being read instead of all at once before matching.  It runs off of the
+ * NFA, and a DFA state is only made the first time the input actually reaches it, by stepping the set of NFA states the
+ * DFA state stands for.  Made states and their transitions are kept in a cache with room for a fixed number of states.
+ * When the cache is full it is flushed, meaning every cached state is thrown out and building starts again from the
+ * state the input is in, so memory stays bounded even for regexes whose full DFA would be exponential.  This object keeps
+ * changing while it matches, so it must not be shared between threads.  An unanchored lazy DFA puts the start state back
+ * into every set it steps to, so it is in an accept state after any input that ends with a match, wherever the match started
+ * @author Ryan Bertsche
+ */
+public class LazyDfa implements LineMatcher
+{
+    //Number of states the cache holds if no size is given
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+
+    //Number of possible input values, every input is treated as a single byte
+    private static final int BYTE_VALUES = 256;
+
+    //Table value for a transition that has not been worked out yet
+    private static final int UNKNOWN = -1;
+
+    //State number of the dead state, which is the empty set of NFA states and is always in the cache
+    private static final int DEAD = 0;
+
+    //The NFA the states are built from
+    private final IndexedNfa nfa;
+
+    //Maximum number of states in the cache
+    private final int capacity;
+
+    //Transition table for the cached states, the next state for state s on byte b is at table[s * 256 + b]
+    private final int[] table;
+
+    //The set of NFA states that each cached state stands for, and whether it accepts
+    private final long[][] stateSets;
+    private final boolean[] accept;
+
+    //Map from set of NFA states to the number of the cached state for it
+    private final HashMap<BitSet, Integer> stateNumbers;
+
+    //Number of states in the cache right now
+    private int stateCount;
+
+    //State number of the start state, which changes after a flush
+    private int startState;
+
+    //True if a match may start at any input position, not just the first one
+    private final boolean unanchored;
+
+    //Epsilon closure of the start state, which an unanchored DFA adds to every set
+    private final long[] startSet;
+
+    //Counters for bytes stepped through, transitions that had to be built, and times the cache was flushed.  Every step that
+    //did not build its transition was a cache hit, so hits are worked out from the first two instead of counted in the loop
+    private long steps;
+    private long cacheMisses;
+    private long cacheFlushes;
+
+    /**
+     * Constructor for a lazy DFA with the default cache size
+     * @param nfa the numbered NFA the states are built from
+     */
+    public LazyDfa(IndexedNfa nfa)
+    {
+        this(nfa, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructor for a lazy DFA with a given cache size
+     * @param nfa the numbered NFA the states are built from
+     * @param capacity maximum number of states held in the cache, at least 3
+     */
+    public LazyDfa(IndexedNfa nfa, int capacity)
+    {
+        this(nfa, capacity, false);
+    }
+
+    /**
+     * Constructor for a lazy DFA that may be unanchored
+     * @param nfa the numbered NFA the states are built from
+     * @param capacity maximum number of states held in the cache, at least 3
+     * @param unanchored true if a match may start anywhere in the input, like the NFA had any input in front of it
+     */
+    public LazyDfa(IndexedNfa nfa, int capacity, boolean unanchored)
+    {
+        if(capacity < 3)
+            throw new Error("The lazy DFA cache must hold at least 3 states.");
+        this.nfa = nfa;
+        this.capacity = capacity;
+        table = new int[capacity * BYTE_VALUES];
+        stateSets = new long[capacity][];
+        accept = new boolean[capacity];
+        stateNumbers = new HashMap<>();
+        this.unanchored = unanchored;
+        startSet = new long[nfa.getWords()];
+        nfa.addClosure(nfa.getStartState(), startSet);
+        Arrays.fill(table, UNKNOWN);
+        reset();
+    }
+
+    /**
+     * Empties the cache and puts the dead state and the start state back in it
+     */
+    private void reset()
+    {
+        Arrays.fill(table, 0, stateCount * BYTE_VALUES, UNKNOWN);
+        Arrays.fill(stateSets, 0, stateCount, null);
+        stateNumbers.clear();
+        stateCount = 0;
+
+        addState(new long[nfa.getWords()]);
+        Arrays.fill(table, DEAD * BYTE_VALUES, (DEAD + 1) * BYTE_VALUES, DEAD);
+
+        startState = addState(startSet.clone());
+    }
+
+    /**
+     * Puts a new state in the cache, the cache must have room for it
+     * @param set bitset of the NFA states the new state stands for
+     * @return number of the new state
+     */
+    private int addState(long[] set)
+    {
+        int s = stateCount++;
+        stateSets[s] = set;
+        accept[s] = nfa.anyAccept(set);
+        stateNumbers.put(BitSet.valueOf(set), s);
+        return s;
+    }
+
+    /**
+     * Builds the transition out of a state on a byte that is not in the table yet.  If the state it goes to is not cached
+     * and the cache is full, the cache is flushed first, so the state number passed in is no longer valid afterwards
+     * @param state number of the state being transitioned out of
+     * @param b the input byte
+     * @return number of the state transitioned to
+     */
+    private int buildTransition(int state, int b)
+    {
+        cacheMisses++;
+        long[] next = new long[nfa.getWords()];
+        nfa.step(stateSets[state], b, next);
+        if(unanchored)
+        {
+            for(int w = 0; w < next.length; w++)
+                next[w] |= startSet[w];
+        }
+        Integer existing = stateNumbers.get(BitSet.valueOf(next));
+        int target;
+        if(existing != null)
+            target = existing;
+        else if(stateCount < capacity)
+            target = addState(next);
+        else
+        {
+            cacheFlushes++;
+            reset();
+            existing = stateNumbers.get(BitSet.valueOf(next));
+            return existing != null ? existing : addState(next);
+        }
+        table[state * BYTE_VALUES + b] = target;
+        return target;
+    }
+
+    /**
+     * Runs the line through the lazy DFA, building any states and transitions that are missing along the way.  A line with
+     * characters that are not ASCII is matched as its UTF-8 bytes
+     * @param line is a String of a single line to be checked for a match
+     * @return true if the line matches
+     */
+    public boolean matches(String line)
+    {
+        int state = startState;
+        for(int i = 0, n = line.length(); i < n; i++)
+        {
+            char c = line.charAt(i);
+            //A character that is not ASCII is matched as the bytes of its UTF-8 encoding, so the whole line is encoded
+            if(c >= 0x80)
+            {
+                steps += i;
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                return matches(ByteBuffer.wrap(bytes), 0, bytes.length);
+            }
+            int next = table[state * BYTE_VALUES + c];
+            if(next == UNKNOWN)
+                next = buildTransition(state, c);
+            if(next == DEAD)
+            {
+                steps += i + 1;
+                return false;
+            }
+            state = next;
+        }
+        steps += line.length();
+        return accept[state];
+    }
+
+    /**
+     * Runs the bytes of one line in a buffer through the lazy DFA, building any states and transitions that are missing
+     * @param buf buffer holding the line
+     * @param from index of the first byte of the line
+     * @param to index one past the last byte of the line
+     * @return true if the line matches
+     */
+    public boolean matches(ByteBuffer buf, int from, int to)
+    {
+        int state = startState;
+        for(int i = from; i < to; i++)
+        {
+            int b = buf.get(i) & 0xFF;
+            int next = table[state * BYTE_VALUES + b];
+            if(next == UNKNOWN)
+                next = buildTransition(state, b);
+            if(next == DEAD)
+            {
+                steps += i + 1 - from;
+                return false;
+            }
+            state = next;
+        }
+        steps += to - from;
+        return accept[state];
+    }
+
+    /**
+     * Getter for the start state, for callers that step through the states themselves
+     * @return number of the start state
+     */
+    public int getStartState()
+    {
+        return startState;
+    }
+
+    /**
+     * Moves from one state to the next on a byte, building the transition if it is not cached.  A flush can renumber
+     * every state, so only the returned state number may be used afterwards.  Steps taken this way are not counted, so the
+     * caller should add them with countSteps once it is done with a run of input, to keep the hit count right
+     * @param state number of the current state
+     * @param b the input byte, from 0 to 255
+     * @return number of the next state
+     */
+    public int next(int state, int b)
+    {
+        int next = table[state * BYTE_VALUES + b];
+        if(next == UNKNOWN)
+            return buildTransition(state, b);
+        return next;
+    }
+
+    /**
+     * Adds steps taken with next to the count the cache hits are worked out from
+     * @param count number of bytes stepped through
+     */
+    public void countSteps(long count)
+    {
+        steps += count;
+    }
+
+    /**
+     * Checks if a state accepts
+     * @param state state number
+     * @return true if the state accepts
+     */
+    public boolean isAccept(int state)
+    {
+        return accept[state];
+    }
+
+    /**
+     * Checks if a state is the dead state, which never leads to an accept state
+     * @param state state number
+     * @return true for the dead state
+     */
+    public boolean isDead(int state)
+    {
+        return state == DEAD;
+    }
+
+    /**
+     * Getter for the number of transitions that were already in the cache, which is every counted step that was not a miss
+     * @return cache hit count
+     */
+    public long getCacheHits()
+    {
+        return steps - cacheMisses;
+    }
+
+    /**
+     * Getter for the number of transitions that had to be built
+     * @return cache miss count
+     */
+    public long getCacheMisses()
+    {
+        return cacheMisses;
+    }
+
+    /**
+     * Getter for the number of times the cache filled up and was flushed
+     * @return flush count
+     */
+    public long getCacheFlushes()
+    {
+        return cacheFlushes;
+    }
+
+    /**
+     * Getter for the number of states in the cache right now
+     * @return number of cached states, including the dead state
+     */
+    public int getCachedStates()
+    {
+        return stateCount;
+    }
+}
@@ -0,0 +1,99 @@
+package graphex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This is a line handler that collects matching lines in memory, for scans that run on another thread and whose output
+ * is written later in input order, like the chunks of the parallel grep and the files of the multi file grep.  Each line
+ * is copied out of the buffer it was matched in with one bulk get, through a duplicate of the buffer since the bulk get
+ * at an index is only in JDK 13 and newer, straight into a byte array that grows as needed, and
+ * the array is handed to the output stage as it is, so a line is only copied once on its way into the collector and once
+ * on its way out.  It is not safe to share between threads
+ * @author Ryan Bertsche
+ */
+public class LineCollector implements LineHandler
+{
+    //Starting size of the array
+    private static final int INITIAL_SIZE = 1 << 12;
+
+    //Bytes written in front of every line, like the file name, and the line separator written after it
+    private final byte[] prefix;
+    private final byte[] separator;
+
+    //The collected output, of which the first size bytes are used
+    private byte[] bytes;
+    private int size;
+
+    /**
+     * Constructor for a collector that writes the lines as they are
+     */
+    public LineCollector()
+    {
+        this(new byte[0]);
+    }
+
+    /**
+     * Constructor for a collector that puts the same bytes in front of every line
+     * @param prefix bytes written before every line
+     */
+    public LineCollector(byte[] prefix)
+    {
+        this.prefix = prefix;
+        separator = System.lineSeparator().getBytes();
+        bytes = new byte[INITIAL_SIZE];
+    }
+
+    /**
+     * Copies a matching line into the array, after the prefix and followed by the line separator
+     * @param buf buffer holding the line
+     * @param start index of the first byte of the line
+     * @param end index one past the last byte of the line
+     */
+    @Override
+    public void matchedLine(ByteBuffer buf, int start, int end)
+    {
+        int length = end - start;
+        ensureRoom((long) prefix.length + length + separator.length);
+        System.arraycopy(prefix, 0, bytes, size, prefix.length);
+        size += prefix.length;
+        ByteBuffer view = buf.duplicate();
+        view.position(start);
+        view.get(bytes, size, length);
+        size += length;
+        System.arraycopy(separator, 0, bytes, size, separator.length);
+        size += separator.length;
+    }
+
+    /**
+     * Writes everything collected to the output stage
+     * @param out output stage the lines are written to
+     */
+    public void writeTo(LineWriter out)
+    {
+        out.write(bytes, 0, size);
+    }
+
+    /**
+     * Getter for the number of bytes collected
+     * @return size of the collected output in bytes
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Makes the array bigger if it does not have room for more bytes, at least doubling it so adding lines stays cheap
+     * @param more number of bytes about to be added
+     */
+    private void ensureRoom(long more)
+    {
+        long needed = size + more;
+        if(needed <= bytes.length)
+            return;
+        if(needed > Integer.MAX_VALUE - 8)
+            throw new Error("FATAL ERROR, OPERATION ABORTED: The matching lines of one piece of the input are more than " + (Integer.MAX_VALUE - 8) + " bytes.");
+        bytes = Arrays.copyOf(bytes, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, 2L * bytes.length)));
+    }
+}
@@ -0,0 +1,41 @@
+package graphex;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This is the callback that scanning hands every matching line to.  The line is given as a range of the buffer being
+ * scanned, without its line separator, so nothing has to be copied unless the handler wants to keep it
+ * @author Ryan Bertsche
+ */
+public interface LineHandler
+{
+    /**
+     * Called once for every line that matches, in the order the lines are in the buffer
+     * @param buf buffer holding the line
+     * @param start index of the first byte of the line
+     * @param end index one past the last byte of the line
+     */
+    void matchedLine(ByteBuffer buf, int start, int end);
+
+    /**
+     * Called when scanning a file maps a new window of it, before any line of the window is handed over.  Most handlers
+     * have no use for it, but one that writes lines out can use it to find the lines in the file
+     * @param window the mapped window
+     * @param channel the file it is mapped from
+     * @param position where in the file the window starts
+     */
+    default void windowMapped(ByteBuffer window, FileChannel channel, long position)
+    {
+    }
+
+    /**
+     * Checked after every matching line is handed over.  Once it is true, scanning stops right after that line instead of
+     * reading the rest of the input, which is how a search that only needs the first match gets out early
+     * @return true if the handler does not want any more lines
+     */
+    default boolean isDone()
+    {
+        return false;
+    }
+}
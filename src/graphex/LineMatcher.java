@@ -0,0 +1,72 @@
+package graphex;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This is the interface for the engines that can decide if a whole line of input is in the language of the regex.
+ * Grep picks one of these based on its options and runs every line of the input through it
+ * @author Ryan Bertsche
+ */
+public interface LineMatcher
+{
+    /**
+     * Checks if the entire line is in the language of the regex
+     * @param line is a String of a single line to be checked for a match
+     * @return true if the line matches
+     */
+    boolean matches(String line);
+
+    /**
+     * Checks if the bytes in a range of a buffer, taken as one whole line, are in the language of the regex.  Every byte
+     * is one input character
+     * @param buf buffer holding the line
+     * @param from index of the first byte of the line
+     * @param to index one past the last byte of the line
+     * @return true if the line matches
+     */
+    boolean matches(ByteBuffer buf, int from, int to);
+
+    /**
+     * Splits a range of a buffer into lines and hands every line that matches to the handler.  Lines end at '\n', '\r' or
+     * "\r\n" the same way BufferedReader.readLine splits them.  If the range is not the end of the input, a line that is
+     * not finished by the end of the range is not matched, and where it starts is returned so it can be scanned again
+     * with more input after it.  If the handler says it is done after a matching line, the scan stops there
+     * @param buf buffer holding the input
+     * @param from index of the first byte to scan, which must be the start of a line
+     * @param to index one past the last byte to scan
+     * @param endOfInput true if there is no more input after this range, so the last line is finished by the end of the range
+     * @param handler callback for matching lines
+     * @return index of the start of the unfinished line, or to if every line in the range was finished, or the start of the
+     * line after the last one handed over if the handler is done
+     */
+    default int scanLines(ByteBuffer buf, int from, int to, boolean endOfInput, LineHandler handler)
+    {
+        int lineStart = from;
+        int i = from;
+        while(i < to)
+        {
+            byte b = buf.get(i);
+            if(b == '\n' || b == '\r')
+            {
+                //A '\r' at the end of the range could be the first half of a "\r\n" that is not here yet
+                if(b == '\r' && i + 1 == to && !endOfInput)
+                    return lineStart;
+                boolean matched = matches(buf, lineStart, i);
+                if(matched)
+                    handler.matchedLine(buf, lineStart, i);
+                if(b == '\r' && i + 1 < to && buf.get(i + 1) == '\n')
+                    i++;
+                lineStart = ++i;
+                if(matched && handler.isDone())
+                    return lineStart;
+            }
+            else
+                i++;
+        }
+        if(!endOfInput)
+            return lineStart;
+        if(lineStart < to && matches(buf, lineStart, to))
+            handler.matchedLine(buf, lineStart, to);
+        return to;
+    }
+}
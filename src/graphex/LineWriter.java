@@ -0,0 +1,282 @@
+package graphex;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This is the output stage that matching lines are written through.  Lines are copied as bytes straight out of the buffer
+ * they were matched in into one large direct buffer, which is only written to the output channel when it fills up, so
+ * there is no String, no character encoding and no flush for every line.  A line that ends in a '\n' right where the
+ * next matching line starts is not copied at once, but added to a run of lines that sit one after another in the input
+ * file, with their line breaks, exactly the way they are written out.  When the output is a regular file and a run gets
+ * long, the run is handed to FileChannel.transferTo, which lets the operating system copy it from the input file to the
+ * output file without it ever passing through the program.  Shorter runs are copied into the buffer like any other line.
+ * Text that is written around the lines, like file names, is encoded as UTF-8, which is how the input lines are read.
+ * Like a PrintStream, a writer that fails to write stops writing and remembers the failure, which checkError reports.
+ * It is not safe to share between threads
+ * @author Ryan Bertsche
+ */
+public class LineWriter implements LineHandler
+{
+    //Size of the output buffer
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    //Shortest run of lines that is sent with transferTo instead of being copied
+    private static final int TRANSFER_THRESHOLD = 1 << 16;
+
+    //Where the output goes
+    private final WritableByteChannel out;
+
+    //True if the output is a regular file that a run of lines can be transferred to
+    private final boolean transferAllowed;
+
+    //The output waiting to be written
+    private final ByteBuffer buffer;
+
+    //The line separator written after every line, and whether it is the '\n' the lines of a run already end with
+    private final byte[] separator;
+    private final boolean newlineSeparator;
+
+    //The file window lines are being matched in right now, the file it is mapped from, and where in the file it starts
+    private ByteBuffer window;
+    private FileChannel source;
+    private long windowPosition;
+
+    //The run of lines waiting to be written.  It is the bytes runFrom up to runTo of runBuffer, which starts at runPosition
+    //in the file runSource.  runBuffer is null when there is no run
+    private ByteBuffer runBuffer;
+    private FileChannel runSource;
+    private long runPosition;
+    private int runFrom;
+    private int runTo;
+
+    //True once a write to the output has failed
+    private boolean failed;
+
+    /**
+     * Constructor for a writer to any channel
+     * @param out channel the output is written to
+     * @param transferAllowed true if out is a regular file that runs of lines may be transferred to
+     */
+    public LineWriter(WritableByteChannel out, boolean transferAllowed)
+    {
+        this.out = out;
+        this.transferAllowed = transferAllowed;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        separator = System.lineSeparator().getBytes();
+        newlineSeparator = System.lineSeparator().equals("\n");
+    }
+
+    /**
+     * Makes a writer to standard output.  Runs of lines are only transferred if standard output is a regular file, which
+     * is the only kind of output that has a position; pipes and terminals do not
+     * @return writer to standard output
+     */
+    public static LineWriter toStandardOutput()
+    {
+        FileChannel stdout = new FileOutputStream(FileDescriptor.out).getChannel();
+        boolean regularFile;
+        try {
+            stdout.position();
+            regularFile = true;
+        }
+        catch (IOException e) {
+            regularFile = false;
+        }
+        return new LineWriter(stdout, regularFile);
+    }
+
+    /**
+     * Remembers the window of the file the next lines are matched in, so that runs of lines can be found in the file
+     * @param window the mapped window
+     * @param channel the file it is mapped from
+     * @param position where in the file the window starts
+     */
+    @Override
+    public void windowMapped(ByteBuffer window, FileChannel channel, long position)
+    {
+        this.window = window;
+        this.source = channel;
+        this.windowPosition = position;
+    }
+
+    /**
+     * Writes a matching line followed by the line separator
+     * @param buf buffer holding the line
+     * @param start index of the first byte of the line
+     * @param end index one past the last byte of the line
+     */
+    @Override
+    public void matchedLine(ByteBuffer buf, int start, int end)
+    {
+        //A line from the mapped window that ends in '\n' can be written straight from the file, line break and all
+        if(newlineSeparator && buf == window && end < window.limit() && buf.get(end) == '\n')
+        {
+            if(runBuffer == buf && start == runTo)
+            {
+                runTo = end + 1;
+                return;
+            }
+            endRun();
+            runBuffer = buf;
+            runSource = source;
+            runPosition = windowPosition;
+            runFrom = start;
+            runTo = end + 1;
+            return;
+        }
+        endRun();
+        put(buf, start, end);
+        put(separator, 0, separator.length);
+    }
+
+    /**
+     * Writes a matching line with some text in front of it, followed by the line separator
+     * @param prefix text written before the line
+     * @param buf buffer holding the line
+     * @param start index of the first byte of the line
+     * @param end index one past the last byte of the line
+     */
+    public void matchedLine(String prefix, ByteBuffer buf, int start, int end)
+    {
+        endRun();
+        byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+        put(bytes, 0, bytes.length);
+        put(buf, start, end);
+        put(separator, 0, separator.length);
+    }
+
+    /**
+     * Writes a line of text followed by the line separator
+     * @param line the text
+     */
+    public void println(String line)
+    {
+        endRun();
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        put(bytes, 0, bytes.length);
+        put(separator, 0, separator.length);
+    }
+
+    /**
+     * Writes bytes that are already laid out as output, like the lines a parallel scan collected
+     * @param bytes the bytes
+     */
+    public void write(byte[] bytes)
+    {
+        write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes part of an array of bytes that are already laid out as output, like the lines a line collector gathered
+     * @param bytes array holding the bytes
+     * @param offset index of the first byte
+     * @param length number of bytes
+     */
+    public void write(byte[] bytes, int offset, int length)
+    {
+        endRun();
+        put(bytes, offset, length);
+    }
+
+    /**
+     * Writes out everything that is waiting, including the run of lines
+     */
+    public void flush()
+    {
+        endRun();
+        drain();
+    }
+
+    /**
+     * Checks if any write to the output has failed, for example because the reader of a pipe went away
+     * @return true if some output was lost
+     */
+    public boolean checkError()
+    {
+        return failed;
+    }
+
+    /**
+     * Writes out the run of lines, with transferTo if it is long enough and the output allows it, otherwise by copying it
+     * into the buffer
+     */
+    private void endRun()
+    {
+        if(runBuffer == null)
+            return;
+        ByteBuffer run = runBuffer;
+        runBuffer = null;
+        int from = runFrom;
+        if(transferAllowed && runTo - from >= TRANSFER_THRESHOLD && !failed)
+        {
+            drain();
+            try {
+                while(from < runTo)
+                {
+                    long sent = runSource.transferTo(runPosition + from, runTo - from, out);
+                    if(sent <= 0)
+                        break;
+                    from += (int) sent;
+                }
+            }
+            catch (IOException e) {
+                failed = true;
+            }
+        }
+        put(run, from, runTo);
+    }
+
+    /**
+     * Copies a range of a buffer into the output buffer, writing the output buffer out each time it fills
+     * @param src buffer holding the bytes
+     * @param from index of the first byte
+     * @param to index one past the last byte
+     */
+    private void put(ByteBuffer src, int from, int to)
+    {
+        while(from < to && !failed)
+        {
+            if(!buffer.hasRemaining())
+                drain();
+            int count = Math.min(buffer.remaining(), to - from);
+            ByteBuffer slice = src.duplicate();
+            slice.limit(from + count);
+            slice.position(from);
+            buffer.put(slice);
+            from += count;
+        }
+    }
+
+    /**
+     * Copies part of an array into the output buffer, writing the output buffer out each time it fills
+     * @param bytes array holding the bytes
+     * @param offset index of the first byte
+     * @param length number of bytes
+     */
+    private void put(byte[] bytes, int offset, int length)
+    {
+        put(ByteBuffer.wrap(bytes), offset, offset + length);
+    }
+
+    /**
+     * Writes the output buffer to the channel and empties it
+     */
+    private void drain()
+    {
+        buffer.flip();
+        try {
+            while(buffer.hasRemaining() && !failed)
+                out.write(buffer);
+        }
+        catch (IOException e) {
+            failed = true;
+        }
+        buffer.clear();
+    }
+}
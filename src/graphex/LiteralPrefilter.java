@@ -0,0 +1,352 @@
+package graphex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * This class finds the literal text that every line matching a regex has to contain, and searches a buffer for it.  The
+ * parsed regex is walked once, working out for every subtree the exact string it matches if there is only one, the prefix
+ * every match starts with, the suffix every match ends with, and the longest string every match contains.  The required
+ * string of the whole regex is searched for with Boyer-Moore-Horspool, or a plain byte search when it is one byte long,
+ * so lines that cannot match are skipped without running them through an automaton at all.  The set of bytes a matching
+ * line can start with is worked out on the same walk
+ * @author Ryan Bertsche
+ */
+public class LiteralPrefilter
+{
+    //Number of possible input values, every input is treated as a single byte
+    private static final int BYTE_VALUES = 256;
+
+    //The bytes every matching line contains
+    private final byte[] literal;
+
+    //How far the search window moves when the byte under its last position is each value, for Boyer-Moore-Horspool
+    private final int[] shift;
+
+    //Bytes a matching line can start with, and whether the empty line matches
+    private final BitSet firstBytes;
+    private final boolean nullable;
+
+    /**
+     * Constructor that is only used by analyze
+     * @param literal the bytes every matching line contains
+     * @param firstBytes bytes a matching line can start with
+     * @param nullable true if the empty line matches
+     */
+    private LiteralPrefilter(byte[] literal, BitSet firstBytes, boolean nullable)
+    {
+        this.literal = literal;
+        this.firstBytes = firstBytes;
+        this.nullable = nullable;
+        shift = new int[BYTE_VALUES];
+        int last = literal.length - 1;
+        for(int b = 0; b < BYTE_VALUES; b++)
+            shift[b] = literal.length;
+        for(int i = 0; i < last; i++)
+            shift[literal[i] & 0xFF] = last - i;
+    }
+
+    /**
+     * Works out the required literal of a parsed regex and makes a prefilter for it
+     * @param regex the parsed regex
+     * @return the prefilter, or null if there is no literal every match must contain, in which case a prefilter could not skip anything
+     */
+    public static LiteralPrefilter analyze(RegexNode regex)
+    {
+        Factors factors = factorsOf(regex);
+        String required = factors.required;
+        if(required.isEmpty())
+            return null;
+        byte[] bytes = new byte[required.length()];
+        for(int i = 0; i < bytes.length; i++)
+        {
+            char c = required.charAt(i);
+            //Characters that are not single bytes or that end lines can never be inside a line, so the automaton is left to reject them
+            if(c >= BYTE_VALUES || c == '\n' || c == '\r')
+                return null;
+            bytes[i] = (byte) c;
+        }
+        return new LiteralPrefilter(bytes, factors.first, factors.nullable);
+    }
+
+    /**
+     * Works out the literal factors of every subtree from those of its children, walking the tree with fold
+     * @param root the regex tree
+     * @return literal factors of the whole tree
+     */
+    private static Factors factorsOf(RegexNode root)
+    {
+        return root.fold((RegexNode node, List<Factors> children) -> {
+            switch(node.getKind())
+            {
+                case CHAR:
+                    return Factors.single(node.getCharacter());
+                case CLASS:
+                    //A class matches one of many bytes, so it has no literal, but its bytes can start a match
+                    Factors any = Factors.empty();
+                    any.exact = null;
+                    node.getRanges().addTo(any.first);
+                    any.nullable = false;
+                    return any;
+                case STAR:
+                    //Any number of repeats includes none, so nothing is required, but the first bytes of the child can still start a match
+                    Factors star = Factors.empty();
+                    star.exact = null;
+                    star.first.or(children.get(0).first);
+                    return star;
+                case CONCAT:
+                    //Runs of children that each match one string are joined into one string first, so a long run of
+                    //characters is not copied over again for every character
+                    Factors concat = Factors.empty();
+                    StringBuilder run = new StringBuilder();
+                    for(Factors child : children)
+                    {
+                        if(child.exact != null)
+                        {
+                            run.append(child.exact);
+                            continue;
+                        }
+                        if(run.length() > 0)
+                            concat = concat.then(Factors.literal(run.toString()));
+                        run.setLength(0);
+                        concat = concat.then(child);
+                    }
+                    if(run.length() > 0)
+                        concat = concat.then(Factors.literal(run.toString()));
+                    return concat;
+                default:
+                    Factors union = children.get(0);
+                    for(int i = 1; i < children.size(); i++)
+                        union = union.or(children.get(i));
+                    return union;
+            }
+        });
+    }
+
+    /**
+     * Getter for the literal every matching line contains
+     * @return copy of the literal bytes
+     */
+    public byte[] getLiteral()
+    {
+        return literal.clone();
+    }
+
+    /**
+     * Checks if a line could match by its first byte alone
+     * @param buf buffer holding the line
+     * @param from index of the first byte of the line
+     * @param to index one past the last byte of the line
+     * @return false if the line is sure not to match
+     */
+    public boolean canStart(ByteBuffer buf, int from, int to)
+    {
+        if(from == to)
+            return nullable;
+        return firstBytes.get(buf.get(from) & 0xFF);
+    }
+
+    /**
+     * Searches a range of a buffer for the literal
+     * @param buf buffer to search
+     * @param from index the search starts at
+     * @param to index one past the last byte searched
+     * @return index of the first byte of the first occurrence, or -1 if there is none
+     */
+    public int indexOf(ByteBuffer buf, int from, int to)
+    {
+        int last = literal.length - 1;
+        byte lastByte = literal[last];
+        if(last == 0)
+        {
+            for(int i = from; i < to; i++)
+            {
+                if(buf.get(i) == lastByte)
+                    return i;
+            }
+            return -1;
+        }
+        int i = from;
+        while(i + last < to)
+        {
+            byte b = buf.get(i + last);
+            if(b == lastByte)
+            {
+                int j = last - 1;
+                while(j >= 0 && buf.get(i + j) == literal[j])
+                    j--;
+                if(j < 0)
+                    return i;
+            }
+            i += shift[b & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if a range of a buffer contains the literal
+     * @param buf buffer to search
+     * @param from index the search starts at
+     * @param to index one past the last byte searched
+     * @return true if the literal is in the range
+     */
+    public boolean contains(ByteBuffer buf, int from, int to)
+    {
+        return indexOf(buf, from, to) >= 0;
+    }
+
+    /**
+     * Checks if a string contains the literal.  The literal is made of UTF-8 bytes, so the string is searched as its UTF-8 bytes
+     * @param line the string to search
+     * @return true if the literal is in the string
+     */
+    public boolean contains(String line)
+    {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return contains(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * The literal factors of one regex subtree
+     */
+    private static class Factors
+    {
+        //The only string the subtree matches, or null if it matches more than one
+        String exact;
+
+        //String every match starts with, ends with, and contains somewhere
+        String prefix;
+        String suffix;
+        String required;
+
+        //Bytes a match can start with, and whether the empty string matches
+        BitSet first;
+        boolean nullable;
+
+        /**
+         * Factors of the empty string, which is what a concatenation starts from
+         * @return factors that only match the empty string
+         */
+        static Factors empty()
+        {
+            Factors f = new Factors();
+            f.exact = "";
+            f.prefix = "";
+            f.suffix = "";
+            f.required = "";
+            f.first = new BitSet(BYTE_VALUES);
+            f.nullable = true;
+            return f;
+        }
+
+        /**
+         * Factors of a single character
+         * @param c the character
+         * @return factors that only match the character
+         */
+        static Factors single(char c)
+        {
+            return literal(String.valueOf(c));
+        }
+
+        /**
+         * Factors of a string of characters
+         * @param s the string, not empty
+         * @return factors that only match the string
+         */
+        static Factors literal(String s)
+        {
+            Factors f = empty();
+            f.exact = s;
+            f.prefix = s;
+            f.suffix = s;
+            f.required = s;
+            if(s.charAt(0) < BYTE_VALUES)
+                f.first.set(s.charAt(0));
+            f.nullable = false;
+            return f;
+        }
+
+        /**
+         * Factors of this subtree followed by another one.  The suffix of the first and the prefix of the second always
+         * meet in the middle of a match, so together they are also required
+         * @param next subtree matched after this one
+         * @return factors of the concatenation
+         */
+        Factors then(Factors next)
+        {
+            Factors f = new Factors();
+            f.exact = exact != null && next.exact != null ? exact + next.exact : null;
+            f.prefix = exact != null ? exact + next.prefix : prefix;
+            f.suffix = next.exact != null ? suffix + next.exact : next.suffix;
+            f.required = longest(longest(required, next.required), suffix + next.prefix);
+            if(f.exact != null)
+                f.required = longest(f.required, f.exact);
+            f.first = (BitSet) first.clone();
+            if(nullable)
+                f.first.or(next.first);
+            f.nullable = nullable && next.nullable;
+            return f;
+        }
+
+        /**
+         * Factors of this subtree or another one.  Only what both sides share is still required
+         * @param other the other option
+         * @return factors of the union
+         */
+        Factors or(Factors other)
+        {
+            Factors f = new Factors();
+            f.exact = exact != null && exact.equals(other.exact) ? exact : null;
+            f.prefix = commonPrefix(prefix, other.prefix);
+            f.suffix = commonSuffix(suffix, other.suffix);
+            f.required = required.equals(other.required) ? required : "";
+            f.required = longest(longest(f.required, f.prefix), f.suffix);
+            f.first = (BitSet) first.clone();
+            f.first.or(other.first);
+            f.nullable = nullable || other.nullable;
+            return f;
+        }
+
+        /**
+         * Picks the longer of two strings, keeping the first one on a tie
+         * @param a first string
+         * @param b second string
+         * @return the longer string
+         */
+        private static String longest(String a, String b)
+        {
+            return b.length() > a.length() ? b : a;
+        }
+
+        /**
+         * Finds the longest prefix two strings share
+         * @param a first string
+         * @param b second string
+         * @return shared prefix
+         */
+        private static String commonPrefix(String a, String b)
+        {
+            int n = 0;
+            while(n < a.length() && n < b.length() && a.charAt(n) == b.charAt(n))
+                n++;
+            return a.substring(0, n);
+        }
+
+        /**
+         * Finds the longest suffix two strings share
+         * @param a first string
+         * @param b second string
+         * @return shared suffix
+         */
+        private static String commonSuffix(String a, String b)
+        {
+            int n = 0;
+            while(n < a.length() && n < b.length() && a.charAt(a.length() - 1 - n) == b.charAt(b.length() - 1 - n))
+                n++;
+            return a.substring(a.length() - n);
+        }
+    }
+}
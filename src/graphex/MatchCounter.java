@@ -0,0 +1,88 @@
+package graphex;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This is a line handler that only counts the matching lines, for when the lines themselves are not printed.  No String
+ * is made and nothing is written for a line, the count just goes up.  It can be given a limit, and once the count gets
+ * to it the handler says it is done, so a scan that only needs to know if there is a match stops at the first one.
+ * Counters on different threads can also share a stop flag, which the first of them to get to its limit sets, and from
+ * then on all of them are done, which is how '-q' stops every file at the first match of all
+ * @author Ryan Bertsche
+ */
+public class MatchCounter implements LineHandler
+{
+    //Count at which the scan can stop
+    private final long limit;
+
+    //Flag shared with other counters that is set once any of them gets to its limit, null if there is none
+    private final AtomicBoolean stop;
+
+    //Number of matching lines so far
+    private long count;
+
+    /**
+     * Constructor for a counter that counts every matching line
+     */
+    public MatchCounter()
+    {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor for a counter that is done once it has counted a given number of lines
+     * @param limit number of matching lines after which the scan can stop, at least 1
+     */
+    public MatchCounter(long limit)
+    {
+        this(limit, null);
+    }
+
+    /**
+     * Constructor for a counter that is done once it has counted a given number of lines, or once any counter it shares
+     * the stop flag with has
+     * @param limit number of matching lines after which the scan can stop, at least 1
+     * @param stop flag shared between the counters, or null to not share one
+     */
+    public MatchCounter(long limit, AtomicBoolean stop)
+    {
+        if(limit < 1)
+            throw new Error("The match limit must be at least 1.");
+        this.limit = limit;
+        this.stop = stop;
+    }
+
+    /**
+     * Counts a matching line
+     * @param buf buffer holding the line
+     * @param start index of the first byte of the line
+     * @param end index one past the last byte of the line
+     */
+    @Override
+    public void matchedLine(ByteBuffer buf, int start, int end)
+    {
+        count++;
+        if(stop != null && count >= limit)
+            stop.set(true);
+    }
+
+    /**
+     * Checks if the limit has been reached, by this counter or by one it shares the stop flag with
+     * @return true once the count is at the limit or the stop flag is set
+     */
+    @Override
+    public boolean isDone()
+    {
+        return count >= limit || (stop != null && stop.get());
+    }
+
+    /**
+     * Getter for the number of matching lines
+     * @return count of the lines handed over so far
+     */
+    public long getCount()
+    {
+        return count;
+    }
+}
@@ -0,0 +1,78 @@
+package graphex;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This is what matches lines against a compiled Pattern.  It is made by Pattern.matcher, and holds the engine the lines
+ * are run through.  The engine may keep state while it matches, so a matcher is not safe to share between threads, but
+ * making one is cheap, so every thread can just make its own from the shared pattern
+ * @author Ryan Bertsche
+ */
+public class Matcher implements LineMatcher
+{
+    //The pattern this matcher is for
+    private final Pattern pattern;
+
+    //The engine the lines are run through
+    private final LineMatcher engine;
+
+    /**
+     * Constructor for a matcher, only called by Pattern.matcher
+     * @param pattern the pattern the matcher is for
+     * @param engine engine built off of the pattern's automata
+     */
+    Matcher(Pattern pattern, LineMatcher engine)
+    {
+        this.pattern = pattern;
+        this.engine = engine;
+    }
+
+    /**
+     * Getter for the pattern of this matcher
+     * @return the pattern
+     */
+    public Pattern pattern()
+    {
+        return pattern;
+    }
+
+    /**
+     * Checks if the entire line is in the language of the regex
+     * @param line is a String of a single line to be checked for a match
+     * @return true if the line matches
+     */
+    @Override
+    public boolean matches(String line)
+    {
+        return engine.matches(line);
+    }
+
+    /**
+     * Checks if one line in a buffer is in the language of the regex
+     * @param buf buffer holding the line
+     * @param from index of the first byte of the line
+     * @param to index one past the last byte of the line
+     * @return true if the line matches
+     */
+    @Override
+    public boolean matches(ByteBuffer buf, int from, int to)
+    {
+        return engine.matches(buf, from, to);
+    }
+
+    /**
+     * Splits a range of a buffer into lines and hands every matching line to the handler, the same way as LineMatcher.scanLines
+     * @param buf buffer holding the input
+     * @param from index of the first byte to scan, which must be the start of a line
+     * @param to index one past the last byte to scan
+     * @param endOfInput true if there is no more input after this range
+     * @param handler callback for matching lines
+     * @return index of the start of the unfinished line, or to if every line in the range was finished, or the start of the
+     * line after the last one handed over if the handler is done
+     */
+    @Override
+    public int scanLines(ByteBuffer buf, int from, int to, boolean endOfInput, LineHandler handler)
+    {
+        return engine.scanLines(buf, from, to, endOfInput, handler);
+    }
+}
@@ -0,0 +1,91 @@
+package graphex;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This is a matcher that counts what another matcher scans.  Every range handed to scanLines goes to the wrapped matcher
+ * as it is, and the bytes it finished, the lines in them and the lines that matched are added to the scan stats.  It
+ * keeps no state of its own, so it is safe to share between threads whenever the matcher it wraps is
+ * @author Ryan Bertsche
+ */
+public class MeteredMatcher implements LineMatcher
+{
+    //The matcher being counted
+    private final LineMatcher engine;
+
+    //Where the counts go
+    private final ScanStats stats;
+
+    /**
+     * Constructor for a metered matcher
+     * @param engine the matcher being counted
+     * @param stats the counters, which may be shared by many metered matchers
+     */
+    public MeteredMatcher(LineMatcher engine, ScanStats stats)
+    {
+        this.engine = engine;
+        this.stats = stats;
+    }
+
+    /**
+     * Getter for the matcher being counted
+     * @return the wrapped matcher
+     */
+    public LineMatcher getEngine()
+    {
+        return engine;
+    }
+
+    /**
+     * Checks if the entire line is in the language of the regex, which is not counted
+     * @param line is a String of a single line to be checked for a match
+     * @return true if the line matches
+     */
+    public boolean matches(String line)
+    {
+        return engine.matches(line);
+    }
+
+    /**
+     * Checks if one line in a buffer is in the language of the regex, which is not counted
+     * @param buf buffer holding the line
+     * @param from index of the first byte of the line
+     * @param to index one past the last byte of the line
+     * @return true if the line matches
+     */
+    public boolean matches(ByteBuffer buf, int from, int to)
+    {
+        return engine.matches(buf, from, to);
+    }
+
+    /**
+     * Scans a range with the wrapped matcher, counting every matching line as it is handed on and every finished byte after
+     * @param buf buffer holding the input
+     * @param from index of the first byte to scan, which must be the start of a line
+     * @param to index one past the last byte to scan
+     * @param endOfInput true if there is no more input after this range
+     * @param handler callback for matching lines
+     * @return index of the start of the unfinished line, or to if every line in the range was finished
+     */
+    @Override
+    public int scanLines(ByteBuffer buf, int from, int to, boolean endOfInput, LineHandler handler)
+    {
+        int finished = engine.scanLines(buf, from, to, endOfInput, new LineHandler()
+        {
+            @Override
+            public void matchedLine(ByteBuffer line, int start, int end)
+            {
+                stats.addMatched();
+                handler.matchedLine(line, start, end);
+            }
+
+            @Override
+            public boolean isDone()
+            {
+                return handler.isDone();
+            }
+        });
+        stats.addScanned(buf, from, finished);
+        return finished;
+    }
+}
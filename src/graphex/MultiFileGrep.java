@@ -0,0 +1,328 @@
+package graphex;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * This class searches many files with one compiled regex.  Directories are walked recursively, and every file is searched
+ * by its own task, which runs on a virtual thread when the JVM has them and on a plain thread pool when it does not.  A
+ * semaphore keeps the number of files open at once under a limit no matter how many tasks there are.  Every matching line
+ * is printed with the name of its file in front, like grep does, and the files are printed in the order they were found.
+ * Only a bounded number of files are in flight at once, so the output of files that finish behind a slow one waits in a
+ * reorder buffer of limited size, the same as the chunks of the parallel grep.  The files can also just be counted, for
+ * '-c', '-l' and '-q', with a counter for every file instead of a buffer of its lines
+ * @author Ryan Bertsche
+ */
+public class MultiFileGrep
+{
+    //Number of files that may be open at once if no limit is given
+    public static final int DEFAULT_MAX_OPEN_FILES = 64;
+
+    //How many files per open file slot may be in flight, which is the size of the reorder buffer
+    private static final int FILES_PER_SLOT = 2;
+
+    //Gives a new matcher when every idle one is in use.  An immutable engine like the compiled dfa can hand out the same one every time
+    private final Supplier<LineMatcher> matchers;
+
+    //Matchers that are not in use by any task right now, so engines that keep state are only made once per open file slot
+    private final ConcurrentLinkedQueue<LineMatcher> idleMatchers;
+
+    //Largest number of files open at once, and the permits for them
+    private final int maxOpenFiles;
+    private final Semaphore openFiles;
+
+    //Number of files and directories that could not be read
+    private final AtomicInteger unreadable;
+
+    /**
+     * Constructor for the multi file grep
+     * @param matchers gives a new matcher when needed, a matcher is only ever used by one task at a time
+     * @param maxOpenFiles largest number of files that may be open at once
+     */
+    public MultiFileGrep(Supplier<LineMatcher> matchers, int maxOpenFiles)
+    {
+        if(maxOpenFiles < 1)
+            throw new Error("The open file limit must be positive.");
+        this.matchers = matchers;
+        this.maxOpenFiles = maxOpenFiles;
+        idleMatchers = new ConcurrentLinkedQueue<>();
+        openFiles = new Semaphore(maxOpenFiles);
+        unreadable = new AtomicInteger();
+    }
+
+    /**
+     * Searches every file under the given paths and prints the matching lines, each one prefixed by its file name
+     * @param paths files and directories to search
+     * @param out output stage the matching lines are written to
+     */
+    public void run(List<Path> paths, LineWriter out)
+    {
+        forEachFile(paths, file -> () -> searchFile(file), (file, matched) -> matched.writeTo(out), null);
+        out.flush();
+    }
+
+    /**
+     * Counts the matching lines of every file under the given paths without keeping the lines, for '-c', '-l' and '-q'.
+     * Every file is counted by its own task with its own counter, the same way run searches them, and the counts are handed
+     * to the callback in the order the files were found.  The scan of a file stops once its count gets to the limit.  If
+     * stopAtFirst is true the counters of all the files share a stop flag, so once any file has a match the files that
+     * are being scanned stop at their next match, no more files are opened, and the search ends without waiting for the
+     * rest of the counts
+     * @param paths files and directories to search
+     * @param limit number of matching lines after which the scan of a file can stop
+     * @param stopAtFirst true if the whole search can end at the first match in any file
+     * @param counted callback given every file that could be read and its count, in order
+     * @return true if any file had a matching line
+     */
+    public boolean count(List<Path> paths, long limit, boolean stopAtFirst, BiConsumer<Path, Long> counted)
+    {
+        AtomicBoolean stop = stopAtFirst ? new AtomicBoolean() : null;
+        boolean[] anyMatched = new boolean[1];
+        forEachFile(paths, file -> () -> countFile(file, limit, stop), (file, count) -> {
+            if(count < 0)
+                return;
+            if(count > 0)
+                anyMatched[0] = true;
+            counted.accept(file, count);
+        }, stop);
+        return anyMatched[0] || (stop != null && stop.get());
+    }
+
+    /**
+     * Getter for the number of files and directories that could not be read, which were reported on stderr and skipped
+     * @return count of unreadable files and directories so far
+     */
+    public int getUnreadableCount()
+    {
+        return unreadable.get();
+    }
+
+    /**
+     * Runs a task for every file under the given paths, and hands the result of each to the callback in the order the
+     * files were found.  Only a bounded number of tasks are in flight at once.  If a stop flag is given, no more tasks
+     * are started once it is set, and the ones still in flight are cancelled or left to finish instead of waited for
+     * @param paths files and directories to search
+     * @param task makes the task for one file
+     * @param done callback given every file and the result of its task, in order
+     * @param stop flag that ends the search early when it is set, or null
+     * @param <T> type of the result of a file task
+     */
+    private <T> void forEachFile(List<Path> paths, Function<Path, Callable<T>> task, BiConsumer<Path, T> done, AtomicBoolean stop)
+    {
+        ExecutorService executor = newExecutor();
+        try {
+            ArrayDeque<Path> files = new ArrayDeque<>();
+            ArrayDeque<Future<T>> results = new ArrayDeque<>();
+            for(Path path : paths)
+            {
+                if(stop != null && stop.get())
+                    break;
+                for(Path file : listFiles(path, unreadable::incrementAndGet))
+                {
+                    if(stop != null && stop.get())
+                        break;
+                    files.add(file);
+                    results.add(executor.submit(task.apply(file)));
+                    //Hand over every file at the front that is already done, so finished output does not pile up
+                    while(!results.isEmpty() && results.peek().isDone())
+                        done.accept(files.poll(), waitFor(results.poll()));
+                    //Once the reorder buffer is full, wait for the oldest file and hand it over before starting another one
+                    if(results.size() >= maxOpenFiles * FILES_PER_SLOT)
+                        done.accept(files.poll(), waitFor(results.poll()));
+                }
+            }
+            while(!results.isEmpty())
+            {
+                if(stop != null && stop.get())
+                {
+                    //A task that is running is left to finish, so a file it has open is never closed under it
+                    for(Future<T> result : results)
+                        result.cancel(false);
+                    break;
+                }
+                done.accept(files.poll(), waitFor(results.poll()));
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Makes the executor the file tasks run on.  The code needs JDK 11 or newer, but virtual threads are only in JDK 21
+     * and newer, so they are looked up by reflection, and on JDK 11 through 20 a fixed pool as big as the open file limit
+     * is used instead
+     * @return executor for the file tasks
+     */
+    private ExecutorService newExecutor()
+    {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(maxOpenFiles);
+        }
+    }
+
+    /**
+     * Lists the regular files at a path, which is the path itself if it is a file, or every file under it in sorted
+     * order if it is a directory.  A file or directory under it that can not be read is reported on stderr and skipped,
+     * and the rest of the walk goes on
+     * @param path file or directory
+     * @return list of files to search
+     */
+    static List<Path> listFiles(Path path)
+    {
+        return listFiles(path, () -> { });
+    }
+
+    /**
+     * Lists the regular files at a path the same way, and calls back for everything under it that can not be read
+     * @param path file or directory
+     * @param onUnreadable called once for every file or directory that is skipped because it can not be read
+     * @return list of files to search
+     */
+    static List<Path> listFiles(Path path, Runnable onUnreadable)
+    {
+        List<Path> files = new ArrayList<>();
+        if(!Files.isDirectory(path))
+        {
+            files.add(path);
+            return files;
+        }
+        try {
+            Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                {
+                    //A link is only searched if it leads to a regular file
+                    if(attrs.isRegularFile() || (attrs.isSymbolicLink() && Files.isRegularFile(file)))
+                        files.add(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e)
+                {
+                    System.err.println("There was an error trying to read " + file);
+                    onUnreadable.run();
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (IOException e) {
+            System.err.println("There was an error trying to read the directory " + path);
+            onUnreadable.run();
+        }
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * Searches one file and collects its matching lines, each one prefixed by the file name and followed by a line separator.
+     * The name is encoded as UTF-8, the same as the lines are read, so a name that is not ASCII comes out in the same
+     * encoding as the rest of the line
+     * @param file the file to search
+     * @return the prefixed matching lines
+     * @throws InterruptedException if the task is interrupted while waiting for a permit
+     */
+    private LineCollector searchFile(Path file) throws InterruptedException
+    {
+        LineCollector matched = new LineCollector((file + ":").getBytes(StandardCharsets.UTF_8));
+        scan(file, matched);
+        return matched;
+    }
+
+    /**
+     * Counts the matching lines of one file
+     * @param file the file to count
+     * @param limit number of matching lines after which the scan can stop
+     * @param stop flag shared by the counters of all the files, or null
+     * @return number of matching lines, or -1 if the file could not be read
+     * @throws InterruptedException if the task is interrupted while waiting for a permit
+     */
+    private long countFile(Path file, long limit, AtomicBoolean stop) throws InterruptedException
+    {
+        MatchCounter counter = new MatchCounter(limit, stop);
+        return scan(file, counter) ? counter.getCount() : -1;
+    }
+
+    /**
+     * Scans one file with a handler.  Waits for an open file permit first, and borrows an idle matcher for the length of
+     * the scan.  A handler that is already done by then, like a counter whose stop flag was set while it waited, is not
+     * given the file at all.  A file that can not be read is reported on stderr
+     * @param file the file to scan
+     * @param handler callback for matching lines
+     * @return true if the file was read or did not need to be, false if it could not be read
+     * @throws InterruptedException if the task is interrupted while waiting for a permit
+     */
+    private boolean scan(Path file, LineHandler handler) throws InterruptedException
+    {
+        openFiles.acquire();
+        if(handler.isDone())
+        {
+            openFiles.release();
+            return true;
+        }
+        LineMatcher lineMatcher = idleMatchers.poll();
+        if(lineMatcher == null)
+            lineMatcher = matchers.get();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Grep.scanFile(channel, lineMatcher, handler);
+            return true;
+        }
+        catch (IOException e) {
+            System.err.println("There was an error trying to read the file " + file);
+            unreadable.incrementAndGet();
+            return false;
+        }
+        finally {
+            openFiles.release();
+            idleMatchers.add(lineMatcher);
+        }
+    }
+
+    /**
+     * Waits for a file task to finish and gets its result
+     * @param result the task's future
+     * @param <T> type of the result
+     * @return the result of the file's task
+     */
+    private static <T> T waitFor(Future<T> result)
+    {
+        try {
+            return result.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Error("Interrupted while searching files.");
+        }
+        catch (ExecutionException e) {
+            throw new Error("There was an error trying to search a file.", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package graphex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This engine matches by running the NFA directly instead of building a DFA from it.  The set of NFA states the input
+ * could be in is kept as a bitset of longs.  When the NFA has a follow table, every input byte is a bit-parallel step:
+ * the set is masked with a precomputed mask for the byte, and each byte of the set that has a state in it picks out one
+ * precomputed bitset of where those eight states go, closures included, which are ORed together a whole word at a time.
+ * Without the table, which is when the NFA is too big for it, the states that have a transition on the byte are picked
+ * out with the mask and their edges are followed one at a time.  There is nothing to build before matching besides the
+ * NFA, so it works for any regex no matter how big its DFA would be, and every line costs O(n*m) for n bytes and m NFA
+ * states, with a much smaller constant for the bit-parallel step.  The two state sets are reused between lines, so this object must
+ * not be shared between threads.
+ * @author Ryan Bertsche
+ */
+public class NfaSimulator implements LineMatcher
+{
+    //Number of possible input values, every input is treated as a single byte
+    private static final int BYTE_VALUES = 256;
+
+    //The NFA being run
+    private final IndexedNfa nfa;
+
+    //True if the NFA has a follow table, so every byte is a bit-parallel step
+    private final boolean parallel;
+
+    //For every byte, the mask the step uses, which is the bitset of NFA states with a transition on it, or whatever
+    //getStepMask gives for the bit-parallel step
+    private final long[][] byteMasks;
+
+    //Epsilon closure of the start state, which every line starts in
+    private final long[] startSet;
+
+    //Set of states before and after reading a byte, swapped after every byte
+    private long[] current;
+    private long[] next;
+
+    /**
+     * Constructor that precomputes the byte masks and the starting state set
+     * @param nfa the numbered NFA to run
+     */
+    public NfaSimulator(IndexedNfa nfa)
+    {
+        this.nfa = nfa;
+        parallel = nfa.hasFollowTable();
+        byteMasks = new long[BYTE_VALUES][];
+        for(int b = 0; b < BYTE_VALUES; b++)
+            byteMasks[b] = parallel ? nfa.getStepMask(b) : nfa.getLabelMask(b);
+        startSet = new long[nfa.getWords()];
+        nfa.addClosure(nfa.getStartState(), startSet);
+        current = new long[nfa.getWords()];
+        next = new long[nfa.getWords()];
+    }
+
+    /**
+     * Runs the line through the NFA one byte at a time.  Matching stops as soon as the set of states is empty.  A line with
+     * characters that are not ASCII is matched as its UTF-8 bytes
+     * @param line is a String of a single line to be checked for a match
+     * @return true if the line matches
+     */
+    public boolean matches(String line)
+    {
+        System.arraycopy(startSet, 0, current, 0, startSet.length);
+        for(int i = 0, n = line.length(); i < n; i++)
+        {
+            char c = line.charAt(i);
+            //A character that is not ASCII is matched as the bytes of its UTF-8 encoding, so the whole line is encoded
+            if(c >= 0x80)
+            {
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                return matches(ByteBuffer.wrap(bytes), 0, bytes.length);
+            }
+            if(!step(c))
+                return false;
+            long[] swap = current;
+            current = next;
+            next = swap;
+        }
+        return nfa.anyAccept(current);
+    }
+
+    /**
+     * Runs the bytes of one line in a buffer through the NFA
+     * @param buf buffer holding the line
+     * @param from index of the first byte of the line
+     * @param to index one past the last byte of the line
+     * @return true if the line matches
+     */
+    public boolean matches(ByteBuffer buf, int from, int to)
+    {
+        System.arraycopy(startSet, 0, current, 0, startSet.length);
+        for(int i = from; i < to; i++)
+        {
+            int b = buf.get(i) & 0xFF;
+            if(!step(b))
+                return false;
+            long[] swap = current;
+            current = next;
+            next = swap;
+        }
+        return nfa.anyAccept(current);
+    }
+
+    /**
+     * Steps the current set of states on one byte into the next set, with the bit-parallel step if there is a follow table
+     * @param b the input byte
+     * @return true if any state was reached
+     */
+    private boolean step(int b)
+    {
+        Arrays.fill(next, 0L);
+        if(parallel)
+            return nfa.parallelStep(current, byteMasks[b], next);
+        return nfa.step(current, byteMasks[b], b, next);
+    }
+}
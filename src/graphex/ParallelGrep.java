@@ -0,0 +1,232 @@
+package graphex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * This class matches one input file on several cores at once.  The file is cut into chunks of about the chunk size, with
+ * every cut moved forward to just after a '\n' so no line is split between two chunks.  Each chunk is memory mapped and
+ * matched by its own task on a ForkJoinPool, and the matching lines of a chunk are collected in a line collector.  The buffers are
+ * written out strictly in chunk order, so the output is the same as a single threaded run.  Only a bounded number of
+ * chunks are in flight at once, so chunks that finish early wait in a reorder buffer of limited size.  The lines can also
+ * just be counted, for '-c', '-l' and '-q', with a counter for every chunk instead of a buffer of its lines
+ * @author Ryan Bertsche
+ */
+public class ParallelGrep
+{
+    //Chunk size used if none is given
+    public static final long DEFAULT_CHUNK_SIZE = 8L << 20;
+
+    //How many chunks per worker may be in flight, which is the size of the reorder buffer
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    //Size of the reads used to look for the line break at a chunk cut
+    private static final int BOUNDARY_READ_SIZE = 64 << 10;
+
+    //Gives a new matcher when every idle one is in use.  An immutable engine like the compiled dfa can hand out the same one every time
+    private final Supplier<LineMatcher> matchers;
+
+    //Matchers that are not in use by any chunk task right now, so an engine that keeps state, like the lazy dfa, is only
+    //made about once per worker and keeps its warmed up cache from one chunk to the next
+    private final ConcurrentLinkedQueue<LineMatcher> idleMatchers;
+
+    //Number of worker threads
+    private final int workers;
+
+    //Target number of bytes in one chunk
+    private final long chunkSize;
+
+    /**
+     * Constructor for the parallel grep
+     * @param matchers gives a new matcher when needed, a matcher is only ever used by one chunk task at a time
+     * @param workers number of worker threads
+     * @param chunkSize target number of bytes in one chunk
+     */
+    public ParallelGrep(Supplier<LineMatcher> matchers, int workers, long chunkSize)
+    {
+        if(workers < 1 || chunkSize < 1)
+            throw new Error("The worker count and chunk size must be positive.");
+        this.matchers = matchers;
+        idleMatchers = new ConcurrentLinkedQueue<>();
+        this.workers = workers;
+        this.chunkSize = Math.min(chunkSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Matches the whole file and writes every matching line to the output in file order
+     * @param channel open channel of the input file
+     * @param out output stage the matching lines are written to
+     * @throws IOException if the file cannot be read
+     */
+    public void run(FileChannel channel, LineWriter out) throws IOException
+    {
+        scanChunks(channel, LineCollector::new, matched -> matched.writeTo(out), null);
+        out.flush();
+    }
+
+    /**
+     * Counts the matching lines of the whole file without keeping them.  Every chunk has its own counter, and the counters
+     * share a stop flag, so once one chunk gets to the limit the chunks that are being scanned stop at their next match,
+     * no more chunks are cut, and the count ends without waiting for the rest
+     * @param channel open channel of the input file
+     * @param limit number of matching lines after which the count can stop
+     * @return number of matching lines, or the limit if there are at least that many in one chunk
+     * @throws IOException if the file cannot be read
+     */
+    public long count(FileChannel channel, long limit) throws IOException
+    {
+        AtomicBoolean stop = new AtomicBoolean();
+        long[] total = new long[1];
+        scanChunks(channel, () -> new MatchCounter(limit, stop), counter -> total[0] += counter.getCount(), stop);
+        return stop.get() ? limit : total[0];
+    }
+
+    /**
+     * Cuts the file into chunks, scans every chunk with its own handler on the pool, and hands the handlers to the callback
+     * in file order once their chunks are done.  If a stop flag is given, no more chunks are cut once it is set, and the
+     * ones still in flight are cancelled instead of waited for
+     * @param channel open channel of the input file
+     * @param handlers makes the handler for one chunk
+     * @param done callback given the handler of every chunk, in order
+     * @param stop flag that ends the scan early when it is set, or null
+     * @param <H> type of the handler
+     * @throws IOException if the file cannot be read
+     */
+    private <H extends LineHandler> void scanChunks(FileChannel channel, Supplier<H> handlers, Consumer<H> done, AtomicBoolean stop) throws IOException
+    {
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            ArrayDeque<ForkJoinTask<H>> inFlight = new ArrayDeque<>();
+            long size = channel.size();
+            long start = 0;
+            while(start < size && (stop == null || !stop.get()))
+            {
+                long end = nextLineStart(channel, Math.min(size, start + chunkSize), size);
+                if(end - start > Integer.MAX_VALUE)
+                    throw new Error("FATAL ERROR, OPERATION ABORTED: A line in the input file is longer than " + Integer.MAX_VALUE + " bytes.");
+                inFlight.add(pool.submit(new ChunkTask<>(channel, start, end, handlers.get())));
+                start = end;
+
+                //Once the reorder buffer is full, wait for the oldest chunk and hand it over before cutting another one
+                if(inFlight.size() >= workers * CHUNKS_PER_WORKER)
+                    done.accept(inFlight.poll().join());
+            }
+            while(!inFlight.isEmpty())
+            {
+                if(stop != null && stop.get())
+                {
+                    for(ForkJoinTask<H> task : inFlight)
+                        task.cancel(false);
+                    break;
+                }
+                done.accept(inFlight.poll().join());
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Finds the first line start at or after a position, which is the byte after the next '\n'
+     * @param channel open channel of the input file
+     * @param position where the search starts
+     * @param size size of the file
+     * @return index of the next line start, or size if there is no '\n' after the position
+     * @throws IOException if the file cannot be read
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException
+    {
+        if(position == 0 || position >= size)
+            return position;
+        ByteBuffer read = ByteBuffer.allocate(BOUNDARY_READ_SIZE);
+        //Start one byte back, so a cut that is already right after a '\n' stays where it is
+        long at = position - 1;
+        while(at < size)
+        {
+            read.clear();
+            int count = channel.read(read, at);
+            if(count <= 0)
+                break;
+            for(int i = 0; i < count; i++)
+            {
+                if(read.get(i) == '\n')
+                    return at + i + 1;
+            }
+            at += count;
+        }
+        return size;
+    }
+
+    /**
+     * Task that matches one chunk of the file, handing its matching lines to its own handler, which it returns
+     * @param <H> type of the handler
+     */
+    private class ChunkTask<H extends LineHandler> extends RecursiveTask<H>
+    {
+        //Version of the serialized form, which is never used since tasks are not serialized
+        private static final long serialVersionUID = 1L;
+
+        //Channel of the input file
+        private final FileChannel channel;
+
+        //First byte of the chunk and one past its last byte
+        private final long start;
+        private final long end;
+
+        //Callback for the matching lines of the chunk
+        private final H handler;
+
+        /**
+         * Constructor for a chunk task
+         * @param channel open channel of the input file
+         * @param start index of the first byte of the chunk, which is the start of a line
+         * @param end index one past the last byte of the chunk, which is the end of a line
+         * @param handler callback for the matching lines of the chunk
+         */
+        ChunkTask(FileChannel channel, long start, long end, H handler)
+        {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.handler = handler;
+        }
+
+        /**
+         * Maps the chunk and scans it, handing every matching line to the handler.  An idle matcher is borrowed for the
+         * length of the scan.  A handler that is already done, like a counter whose stop flag was set while the chunk was
+         * waiting, is given back without the chunk being scanned
+         * @return the handler
+         */
+        @Override
+        protected H compute()
+        {
+            if(handler.isDone())
+                return handler;
+            LineMatcher lineMatcher = idleMatchers.poll();
+            if(lineMatcher == null)
+                lineMatcher = matchers.get();
+            try {
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                lineMatcher.scanLines(buf, 0, (int) (end - start), true, handler);
+            }
+            catch (IOException e) {
+                throw new RuntimeException("There was an error trying to read the input file", e);
+            }
+            finally {
+                idleMatchers.add(lineMatcher);
+            }
+            return handler;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package graphex;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -9,15 +10,38 @@ import java.util.*;
  */
 public class Parser
 {
-    //List of Characters version of the string regex
-    ArrayList<Character> listRegex;
-    //An iterator object for the list of chars of the string
-    Iterator<Character> iteratorRegex;
-    //Current character is the current character to be matched and parsed
-    Character currentChar;
+    //The characters of the regex that is being parsed
+    char[] regexChars;
+    //The parsed regex, which the nfa and the literal prefilter are both made from
+    RegexNode regexTree;
     //Holder for the trees that will be created
     FiniteAutomataTree nfaTree;
     FiniteAutomataTree dfaTree;
+    //Every character that appears in the regex.  Any other input byte can only ever go to the termination state
+    HashSet<Character> alphabet;
+    //Map from the set of contained NFA nodes, as a bitset of their numbers, to the DFA node made from that set
+    HashMap<BitSet, FiniteAutomataNode> dfaStates;
+    //Queue of DFA nodes that have been made but do not have their transitions yet, and the bitsets of their NFA states
+    ArrayDeque<FiniteAutomataNode> uncheckedDfaNodes;
+    ArrayDeque<long[]> uncheckedDfaSets;
+    //Numbered copy of the nfa with every epsilon closure computed once, which the subset construction works off of
+    IndexedNfa indexedNfa;
+    //The byte intervals that move every set of NFA states the same way, from IndexedNfa.getByteIntervals, and the bitset
+    //of the NFA states with a transition on each interval, null for an interval no transition is on.  Only used while the
+    //dfa is being built
+    int[] byteIntervals;
+    long[][] intervalMasks;
+    //Options that change how the regex is compiled
+    CompileOptions options;
+    //The minimizer that was run on the dfa, null if minimization is turned off
+    DfaMinimizer dfaMinimizer;
+    //Search for the literal every match of the regex contains, null if there is no such literal
+    LiteralPrefilter prefilter;
+    //Number of patterns compiled together, and the patterns each accepting nfa node came from
+    int patternCount;
+    IdentityHashMap<FiniteAutomataNode, List<Integer>> patternIds;
+    //Wall time of every compile phase and the counters taken along the way
+    CompileStats stats;
 
     /**
      * Constructor that takes in the in the raw regex, and calls all the necessary helper method to build the nfa nad dfa to completion
@@ -25,14 +49,102 @@ public class Parser
      */
     public Parser(String rawRegex)
     {
-        listRegex = new ArrayList<Character>(charToObject(rawRegex));
-        iteratorRegex = listRegex.iterator();
-        if(iteratorRegex.hasNext())
-            currentChar = iteratorRegex.next();
+        this(rawRegex, new CompileOptions());
+    }
+
+    /**
+     * Constructor that takes in the raw regex and the options to compile it with, and builds the nfa and dfa to completion.
+     * If minimization is turned on, the dfa that is kept is the minimized one
+     * @param rawRegex String is the regex as grabbed by the string argumetn
+     * @param options CompileOptions that change how the automata are built
+     */
+    public Parser(String rawRegex, CompileOptions options)
+    {
+        this(Collections.singletonList(rawRegex), options);
+    }
+
+    /**
+     * Constructor that compiles a whole list of regexes into one automaton.  Each regex is parsed into its own nfa, the
+     * accepting nodes of each are tagged with the number of the regex, its index in the list, and then all the nfas are
+     * unioned together.  Every dfa node keeps the nfa nodes it is made of, so the regexes a dfa state matches can be found
+     * with getPatternIds.  Minimization would merge accepting states of different regexes, so it is only done when there
+     * is a single regex.  With the Glushkov option there is no nfa tree, and the position automaton of all the regexes is
+     * built straight into the indexed nfa instead
+     * @param patterns the regexes, at least one
+     * @param options CompileOptions that change how the automata are built
+     */
+    public Parser(List<String> patterns, CompileOptions options)
+    {
+        this.options = options;
+        patternCount = patterns.size();
+        patternIds = new IdentityHashMap<>();
+        stats = new CompileStats(String.join("\n", patterns));
         try {
-            parseStarter();
-            nameNFA();
-            nfaToDfa();
+            stats.begin("parse");
+            ArrayList<RegexNode> regexTrees = new ArrayList<>();
+            ArrayList<FiniteAutomataTree> nfaTrees = new ArrayList<>();
+            for(int id = 0; id < patternCount; id++)
+            {
+                regexChars = patterns.get(id).toCharArray();
+                parseStarter();
+                if(nfaTree != null)
+                {
+                    for(FiniteAutomataNode fan : nfaTree.getAllNodes())
+                    {
+                        if(fan.getAccept())
+                            patternIds.put(fan, Collections.singletonList(id));
+                    }
+                }
+                regexTrees.add(regexTree);
+                nfaTrees.add(nfaTree);
+            }
+            regexTree = RegexNode.union(regexTrees);
+            prefilter = LiteralPrefilter.analyze(regexTree);
+            if(options.isGlushkov())
+            {
+                stats.end();
+
+                //The position automaton is built straight into the numbered form, so it is the index phase
+                stats.begin("index");
+                GlushkovBuilder glushkov = new GlushkovBuilder(regexTrees);
+                indexedNfa = glushkov.getIndexedNfa();
+                alphabet = glushkov.getAlphabet();
+                patternIds.putAll(glushkov.getPatternIds());
+                stats.setNfaStates(indexedNfa.getStateCount());
+                stats.end();
+            }
+            else
+            {
+                //Union the patterns from the right, the same way the options of a '|' are joined
+                for(int id = patternCount - 2; id >= 0; id--)
+                {
+                    nfaTrees.get(id).union(nfaTree);
+                    nfaTree = nfaTrees.get(id);
+                }
+                nameNFA();
+                stats.setNfaStates(nfaTree.getAllNodes().size());
+                stats.end();
+
+                stats.begin("index");
+                indexedNfa = new IndexedNfa(nfaTree);
+                stats.addClosures(indexedNfa.getTableClosures());
+                stats.end();
+            }
+            if(options.isBuildDfa())
+            {
+                stats.begin("subset");
+                nfaToDfa();
+                stats.setDfaStates(dfaTree == null ? 0 : dfaTree.getAllNodes().size());
+                stats.end();
+                if(dfaTree != null && options.isMinimize() && patternCount == 1)
+                {
+                    stats.begin("minimize");
+                    dfaMinimizer = new DfaMinimizer(dfaTree);
+                    dfaTree = dfaMinimizer.getMinimizedTree();
+                    stats.setDfaStates(dfaMinimizer.getStatesAfter());
+                    stats.end();
+                }
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -59,7 +171,7 @@ public class Parser
 
     /**
      * Getter for dfa tree
-     * @return dfa
+     * @return dfa, or null if the options turned off building the dfa or it went over the state limit
      */
     public FiniteAutomataTree getDfaTree()
     {
@@ -68,152 +180,361 @@ public class Parser
 
 
     /**
-     * getter for nfa tree
-     * @return nfa
+     * Getter for the minimizer that was run on the dfa, which has the state counts from before and after minimization
+     * @return the minimizer, or null if minimization was not turned on
      */
-    public FiniteAutomataTree getNfaTree()
+    public DfaMinimizer getDfaMinimizer()
     {
-        return nfaTree;
+        return dfaMinimizer;
     }
 
 
     /**
-     * First method that starts the recursive decent parse of the regex string.
-     * Parser works by recursively returning subtrees, and adding them together based on union, concat, or star operators.
-     * Once the tree returns to this method, it is the full nfa tree, and is stored in the global variable
-     * @throws Exception
+     * Getter for the alphabet of the regex
+     * @return set of every character that appears in the regex
      */
-    public void parseStarter() throws Exception {
+    public HashSet<Character> getAlphabet()
+    {
+        return alphabet;
+    }
 
-        nfaTree = parseRegex();
-        //If there are mre charadters left after parse is completed, then the regex was invalid
-        if(iteratorRegex.hasNext())
-        {
-            throw new Error("There entered regex was invalid.");
-        }
 
+    /**
+     * Getter for the numbered copy of the nfa, with the epsilon closures of every state
+     * @return indexed nfa
+     */
+    public IndexedNfa getIndexedNfa()
+    {
+        return indexedNfa;
     }
 
+
     /**
-     * Parse regex level, always calls parse term, and then unions together other parse regex segment if '|' symbol
-     * is next symbol
-     * @return subtree
-     * @throws Exception
+     * Getter for the number of patterns compiled together
+     * @return number of regexes given to the parser
+     */
+    public int getPatternCount()
+    {
+        return patternCount;
+    }
+
+
+    /**
+     * Finds which of the patterns a dfa node accepts for, which are the patterns of the accepting nfa nodes it is made of
+     * @param dfaNode node of the dfa tree
+     * @return sorted pattern numbers, empty if the node does not accept
      */
-    private FiniteAutomataTree parseRegex() throws Exception {
-        FiniteAutomataTree t;
-        t = parseTerm();
-        if(currentChar == '|')
+    public int[] getPatternIds(FiniteAutomataNode dfaNode)
+    {
+        TreeSet<Integer> ids = new TreeSet<>();
+        for(FiniteAutomataNode fan : dfaNode.getDfaContains())
         {
-            consumeInput();
-            FiniteAutomataTree t2;
-            t2 = parseRegex();
-            t.union(t2);
+            List<Integer> nodeIds = patternIds.get(fan);
+            if(nodeIds != null)
+                ids.addAll(nodeIds);
         }
-        return t;
+        int[] sorted = new int[ids.size()];
+        int i = 0;
+        for(int id : ids)
+            sorted[i++] = id;
+        return sorted;
+    }
+
 
+    /**
+     * Getter for the measurements taken while compiling
+     * @return compile stats
+     */
+    public CompileStats getStats()
+    {
+        return stats;
     }
 
+
     /**
-     * always calls parsefactor, and if the next char is not another reserved symbol, it calls parseterm again and concats
-     * the two peieces together, Smiley face char is a bit of a hack that symbolizes the end of legitimate chars, to help end recursion.
-     * It causes no errors because it is not a valid inputtable char in regex
-     * @return NFA subtree
-     * @throws Exception
+     * Getter for the parsed regex
+     * @return root of the regex tree
      */
-    private FiniteAutomataTree parseTerm() throws Exception {
-        FiniteAutomataTree t;
-        t = parseFactor();
-        if(currentChar != '|'  && currentChar != null && currentChar != ')' && currentChar != '☺')
-        {
-            FiniteAutomataTree t2;
-            t2 = parseTerm();
-            t.concat(t2);
-        }
+    public RegexNode getRegexTree()
+    {
+        return regexTree;
+    }
 
-        return t;
+
+    /**
+     * Getter for the literal prefilter of the regex
+     * @return prefilter, or null if no literal has to be in every match
+     */
+    public LiteralPrefilter getPrefilter()
+    {
+        return prefilter;
     }
 
 
     /**
-     * Always calls parse base, and then if after the next char is *, it stars the returned subtree, and consumes all
-     * consecutive '*' because they are valid but do not change tree in any way
-     * @return NFA subtree
-     * @throws Exception
+     * getter for nfa tree
+     * @return nfa, or null if the Glushkov option built the position automaton instead
      */
-    private FiniteAutomataTree parseFactor() throws Exception {
-        FiniteAutomataTree t;
-        t = parseBase();
-        if(currentChar == '*')
-        {
-            t.star();
-            do {
-                consumeInput();
-            } while(currentChar == '*');
-        }
-        return t;
+    public FiniteAutomataTree getNfaTree()
+    {
+        return nfaTree;
     }
 
+
     /**
-     * Parse base is the only method that makes new subtrees.  it first checks to see if it is dealing with a
-     * '(' to call parse regex instead. If not i makes a new tree with just 2 nodes for the individual character.  Also catches some regex errors
-     * @return NFA subtree
+     * Parses the regex in regexChars into the regex tree, and builds the Thompson nfa tree from it unless the Glushkov
+     * option is on.  The parse is a single pass over the characters with an explicit stack instead of recursive descent,
+     * so the length of the regex and how deeply its parenthesis nest are only limited by memory, and the time taken is
+     * linear in the length.  Every open group on the stack keeps the options of its '|' that are already finished, and
+     * the factors of the option that is still being read.  Besides single characters, '|', '*' and parenthesis, the regex
+     * can have bracket classes like [a-z_] and [^0-9], the '.' for any character, and the escapes \d, \w and \s and their
+     * upper case opposites.  A backslash in front of any other character makes it a plain character, and \t is a tab
      * @throws Exception
      */
-    private FiniteAutomataTree parseBase() throws Exception {
-        FiniteAutomataTree t;
-        if(currentChar == '(')
-        {
-            consumeInput();
-            t = parseRegex();
-            if(currentChar ==')')
-                consumeInput();
-            else
-                throw new Error("Invalid Regex, parenthesis mismatch");
+    public void parseStarter() throws Exception {
 
-        }
-        else if(currentChar == '|' || currentChar == ')' || currentChar == null)
+        //Finished options and the factors of the current option, for every group that is open.  The whole regex is the bottom group
+        ArrayDeque<ArrayList<RegexNode>> alternatives = new ArrayDeque<>();
+        ArrayDeque<ArrayList<RegexNode>> factors = new ArrayDeque<>();
+        alternatives.push(new ArrayList<RegexNode>());
+        factors.push(new ArrayList<RegexNode>());
+        int i = 0;
+        while(i < regexChars.length)
         {
-          throw new Error("There is an error in your regex.");
+            char c = regexChars[i];
+            ArrayList<RegexNode> term = factors.peek();
+            if(c == '(')
+            {
+                alternatives.push(new ArrayList<RegexNode>());
+                factors.push(new ArrayList<RegexNode>());
+            }
+            else if(c == ')')
+            {
+                //A close parenthesis with no group open means the regex ended early
+                if(alternatives.size() == 1)
+                    throw new Error("There entered regex was invalid.");
+                ArrayList<RegexNode> group = alternatives.pop();
+                group.add(finishTerm(factors.pop()));
+                factors.peek().add(RegexNode.union(group));
+            }
+            else if(c == '|')
+            {
+                alternatives.peek().add(finishTerm(term));
+                factors.pop();
+                factors.push(new ArrayList<RegexNode>());
+            }
+            else if(c == '*' && !term.isEmpty())
+            {
+                //Consecutive '*' are valid but do not change the tree in any way
+                term.set(term.size() - 1, RegexNode.star(term.get(term.size() - 1)));
+                while(i + 1 < regexChars.length && regexChars[i + 1] == '*')
+                    i++;
+            }
+            else if(c == '[')
+                i = parseClass(i, term);
+            else if(c == '.')
+                term.add(CharacterClass.any().toRegexNode());
+            else if(c == '\\' && i + 1 < regexChars.length)
+            {
+                i++;
+                CharacterClass escaped = CharacterClass.forEscape(regexChars[i]);
+                if(escaped != null)
+                    term.add(escaped.toRegexNode());
+                else if(regexChars[i] == 't')
+                    term.add(RegexNode.literal('\t'));
+                else
+                {
+                    int end = i + Character.charCount(Character.codePointAt(regexChars, i));
+                    term.add(literal(i, end));
+                    i = end - 1;
+                }
+            }
+            else
+            {
+                //Anything else, including a '*' with nothing before it to repeat, is a literal character.  A surrogate pair
+                //is one character made of two chars
+                int end = i + 1;
+                if(Character.isHighSurrogate(c) && end < regexChars.length && Character.isLowSurrogate(regexChars[end]))
+                    end++;
+                term.add(literal(i, end));
+                i = end - 1;
+            }
+            i++;
         }
-        else
+        if(alternatives.size() != 1)
+            throw new Error("Invalid Regex, parenthesis mismatch");
+        ArrayList<RegexNode> top = alternatives.pop();
+        top.add(finishTerm(factors.pop()));
+        regexTree = RegexNode.union(top);
+        if(!options.isGlushkov())
+            nfaTree = buildNfa(regexTree);
+
+    }
+
+    /**
+     * Parses a bracket class, from its '[' up to its ']', and adds the subtree that matches one of its characters to the
+     * factors of the option being read.  A '^' right after the '[' makes it match every character that is not listed.  A
+     * ']' right after the '[' or the '^' is a plain character, and so is a '-' that does not sit between two characters.
+     * Inside the class a backslash escapes the character after it, and \d, \w and \s add their classes
+     * @param start index of the '['
+     * @param term the factors of the option being read
+     * @return index of the ']' that ends the class
+     */
+    private int parseClass(int start, ArrayList<RegexNode> term)
+    {
+        CharacterClass members = new CharacterClass();
+        int i = start + 1;
+        boolean negated = i < regexChars.length && regexChars[i] == '^';
+        if(negated)
+            i++;
+        int first = i;
+        while(i >= regexChars.length || regexChars[i] != ']' || i == first)
         {
-            t = new FiniteAutomataTree(currentChar);
-            consumeInput();
+            if(i >= regexChars.length)
+                throw new Error("Invalid Regex, bracket mismatch");
+            if(regexChars[i] == '\\' && i + 1 < regexChars.length)
+            {
+                CharacterClass escaped = CharacterClass.forEscape(regexChars[i + 1]);
+                if(escaped != null)
+                {
+                    members.addAll(escaped);
+                    i += 2;
+                    continue;
+                }
+            }
+            int low = classMember(i);
+            i = skipClassMember(i);
+            int high = low;
+            if(i + 1 < regexChars.length && regexChars[i] == '-' && regexChars[i + 1] != ']')
+            {
+                high = classMember(i + 1);
+                i = skipClassMember(i + 1);
+            }
+            members.add(low, high);
         }
-        return t;
+        term.add((negated ? members.negate() : members).toRegexNode());
+        return i;
+    }
+
+    /**
+     * Reads one character inside a bracket class, which may be escaped with a backslash
+     * @param i index of the character, or of the backslash in front of it
+     * @return code point of the character
+     */
+    private int classMember(int i)
+    {
+        if(regexChars[i] == '\\' && i + 1 < regexChars.length)
+            return regexChars[i + 1] == 't' ? '\t' : Character.codePointAt(regexChars, i + 1);
+        return Character.codePointAt(regexChars, i);
+    }
+
+    /**
+     * Finds the index right after one character inside a bracket class
+     * @param i index of the character, or of the backslash in front of it
+     * @return index after the character
+     */
+    private int skipClassMember(int i)
+    {
+        if(regexChars[i] == '\\' && i + 1 < regexChars.length)
+            i++;
+        return i + Character.charCount(Character.codePointAt(regexChars, i));
+    }
+
+    /**
+     * Makes the regex subtree for one literal character of the regex.  The automata run over the bytes of the input, which
+     * are taken to be UTF-8, so a character that is not ASCII is turned into the concatenation of the bytes of its UTF-8
+     * encoding.  The bytes stay together as one factor, so a '*' after the character repeats all of them
+     * @param start index of the character in regexChars
+     * @param end index one past its last char, which is start + 2 for a surrogate pair
+     * @return regex subtree that matches the character
+     */
+    private RegexNode literal(int start, int end)
+    {
+        char c = regexChars[start];
+        if(c < 0x80)
+            return RegexNode.literal(c);
+        byte[] bytes = new String(regexChars, start, end - start).getBytes(StandardCharsets.UTF_8);
+        ArrayList<RegexNode> sequence = new ArrayList<>();
+        for(byte b : bytes)
+            sequence.add(RegexNode.literal((char) (b & 0xFF)));
+        return RegexNode.concat(sequence);
+    }
+
+    /**
+     * Turns the factors of one option of a '|' into its concatenation.  An option with nothing in it is an error
+     * @param term the factors of the option, in order
+     * @return regex subtree for the option
+     */
+    private RegexNode finishTerm(ArrayList<RegexNode> term)
+    {
+        if(term.isEmpty())
+            throw new Error("There is an error in your regex.");
+        return RegexNode.concat(term);
+    }
+
+    /**
+     * Builds the Thompson NFA for a parsed regex tree.  The operands of a concatenation or union are joined from the
+     * right, the same way the parser used to join them while it was parsing, so the NFA comes out the same.  The tree is
+     * walked with fold, so a deep tree can not overflow the stack
+     * @param root regex tree
+     * @return NFA tree
+     */
+    private FiniteAutomataTree buildNfa(RegexNode root)
+    {
+        return root.fold((RegexNode node, List<FiniteAutomataTree> kids) -> {
+            switch(node.getKind())
+            {
+                case CHAR:
+                    return new FiniteAutomataTree(node.getCharacter());
+                case CLASS:
+                    return new FiniteAutomataTree(node.getRanges());
+                case STAR:
+                    FiniteAutomataTree starred = kids.get(0);
+                    starred.star();
+                    return starred;
+                default:
+                    FiniteAutomataTree t = kids.get(kids.size() - 1);
+                    for(int k = kids.size() - 2; k >= 0; k--)
+                    {
+                        FiniteAutomataTree left = kids.get(k);
+                        if(node.getKind() == RegexNode.Kind.CONCAT)
+                            left.concat(t);
+                        else
+                            left.union(t);
+                        t = left;
+                    }
+                    return t;
+            }
+        });
     }
 
 
     /**
      * This method traverses the stored NFA and names all the nodes, which is helpful when you have to output them to dot,
-     * so they are nicely labeled, and you can see which NFA nodes are combined in a DFA
+     * so they are nicely labeled, and you can see which NFA nodes are combined in a DFA.  It also collects the alphabet of
+     * the regex from the character transitions on the way
      */
     private void nameNFA()
     {
         int x = 0;
+        alphabet = new HashSet<>();
         for(FiniteAutomataNode fan: nfaTree.getAllNodes())
         {
+            alphabet.addAll(fan.getKeys());
+            for(ByteRanges ranges : fan.getRangeTransitions().keySet())
+            {
+                for(int k = 0; k < ranges.getRangeCount(); k++)
+                {
+                    for(int b = ranges.getLow(k); b <= ranges.getHigh(k); b++)
+                        alphabet.add((char) b);
+                }
+            }
             fan.setName(Integer.toString(x));
             x++;
         }
     }
 //When all dfas are built, the boolean will be false, and the loop will be broken
 
-    /**
-     * This method is called when consuming a char in parsing, and it stores the current char in the iterator for easy peeking.
-     * the smiley hack is used again, if there are no ore chars, to help prevent out of bounds errors
-     */
-    private void consumeInput()
-    {
-        //System.out.println("Consuming character: " + currentChar);
-        if(iteratorRegex.hasNext())
-            currentChar = iteratorRegex.next();
-        else
-            currentChar = '☺';
-    }
-
-
     /**
      * This method is repsonsible for taking the complete NFA Tree and converting it into a DFA tree.  This is done by
      * starting at the NFA start and doing epsilon enclosure to find the dfa start node.  DFA nodes actually contain a set
@@ -221,168 +542,152 @@ public class Parser
      * and do an epsilon closure on all of them, and you have a set of NFA nodes, which ends up being the dfa node that that character
      * transitions to. All characters that do not transition to any nodes for a dfa go to a Null/termination state.  This
      * method is slightly more complex, but leads to a DFA that almost always has less than 2^n nodes, as you would get with a
-     * straight power set of nfa nodes.  You make a transition for every character in a dfa to another dfa node(If it exists, you
-     * just transition to it, if not you make a new dfa node and transition to that).  You keep looping through list of all dfa nodes
-     * until each dfa node has all it transitions done. This eventually converges, and the dfa is made.
+     * straight power set of nfa nodes.  The sets of NFA nodes are worked with as bitsets from the indexed nfa, where every
+     * epsilon closure was computed once up front, so finding where a set goes on a character is just ORing cached closures
+     * together.  The bytes are worked with in intervals that every transition either covers all of or none of, so a
+     * character class costs one step for each interval it cuts the bytes into rather than one for each of its characters.
+     * Every set is keyed in a hashmap, so finding out if the DFA node for a set already exists is a single lookup.
+     * New DFA nodes go on a queue, and the queue is worked until it is empty, so every DFA node has its transitions made
+     * exactly once.  If the options have a state limit and the DFA goes over it, the dfa tree is left null.
      */
     private void nfaToDfa()
     {
         //Create new dfa tree
         dfaTree = new FiniteAutomataTree();
+        dfaStates = new HashMap<>();
+        uncheckedDfaNodes = new ArrayDeque<>();
+        uncheckedDfaSets = new ArrayDeque<>();
+        //Masks of the NFA states that have a transition on each byte interval, an interval with none is left out
+        byteIntervals = indexedNfa.getByteIntervals();
+        intervalMasks = new long[byteIntervals.length - 1][];
+        for(int k = 0; k < intervalMasks.length; k++)
+        {
+            long[] mask = indexedNfa.getLabelMask(byteIntervals[k]);
+            for(long word : mask)
+            {
+                if(word != 0)
+                {
+                    intervalMasks[k] = mask;
+                    break;
+                }
+            }
+        }
+
         //Create new Node, which will be start node, which is epsilon closure of the nfa start node
-        FiniteAutomataNode dfaRoot = new FiniteAutomataNode(epsilonClosure(nfaTree.getStartNode()));
+        long[] startSet = new long[indexedNfa.getWords()];
+        indexedNfa.addClosure(indexedNfa.getStartState(), startSet, stats);
+        FiniteAutomataNode dfaRoot = new FiniteAutomataNode(containedNodes(startSet));
         //Create dfa null state, which is the garbage state for dfa
         FiniteAutomataNode dfaNullState = new FiniteAutomataNode(false);
-        //This is the boolean that tracks whether all dfa nodes in the set of all dfa nodes has been checked.
-        boolean dfaBuildComplete = true;
 
         //Adds the start state node to the dfa and sets it as start
         dfaTree.addNode(dfaRoot);
         dfaTree.setStartNode(dfaRoot);
+        dfaStates.put(BitSet.valueOf(startSet), dfaRoot);
+        uncheckedDfaNodes.add(dfaRoot);
+        uncheckedDfaSets.add(startSet);
 
-        //Adds the null state to the dfa and sets it to the null state
+        //Adds the null state to the dfa and sets it to the null state.  It contains no NFA nodes, so it is keyed by the empty set
         dfaNullState.setName("Termination State");
         dfaNullState.setDfaChecked(false);
         dfaTree.addNode(dfaNullState);
         dfaTree.setNullState(dfaNullState);
-
-        /**
-         * Loop that keeps whole process going until all dfa states have been made with all transitions.  will stop when
-         * conversion converges.
-         */
-        do
+        dfaStates.put(new BitSet(), dfaNullState);
+        uncheckedDfaNodes.add(dfaNullState);
+        uncheckedDfaSets.add(new long[indexedNfa.getWords()]);
+
+        //Loop that keeps making connections until no DFA node is left without its transitions.  If the DFA gets bigger than
+        //the state limit, the construction is abandoned and there is no DFA
+        int limit = options.getDfaStateLimit();
+        while(! uncheckedDfaNodes.isEmpty())
         {
-            //sets compete to true.  Will be && with individual node competion to see give acurate representaion of build complete
-            dfaBuildComplete = true;
-            //have to convert set to array list to cycle through by manual for loop with counter, because iterating through set while adding items to set is an error in java language
-            ArrayList<FiniteAutomataNode> cycler = new ArrayList<>(dfaTree.getAllNodes());
-            //current size of array when for loop starts
-            int i = cycler.size();
-
-            //Loop through all DFAs nodes in dfa tree
-            for(int j = 0; j < i; j++)
+            if(limit > 0 && dfaTree.getAllNodes().size() > limit)
             {
-                //Boolean setter that is only true if all dfa nodes in dfa tree have been marked as completely set, which happens when convergence happens.
-                //This happens before connections are added because new nodes could be added by this method, and if this happened after, all nodes might be completed, but new, unchecked nodes could have been added
-                dfaBuildComplete = dfaBuildComplete && cycler.get(j).isDfaChecked();
-
-                //If DFA node is not finished, make call helper on that node that makes all the connections
-                if(! cycler.get(j).isDfaChecked())
-                {
-                    nfaToDfaConnectionMaker(cycler.get(j));
-
-                }
+                dfaTree = null;
+                break;
             }
-
-
-        }while(! dfaBuildComplete);
+            nfaToDfaConnectionMaker(uncheckedDfaNodes.poll(), uncheckedDfaSets.poll());
+        }
+        dfaStates = null;
+        uncheckedDfaNodes = null;
+        uncheckedDfaSets = null;
+        byteIntervals = null;
+        intervalMasks = null;
 
     }
 
     /**
-     * This method takes in a dfa node, and makes all the connections for each character in the language to other dfa nodes.
-     * It accomplishes this by doing epsilon enclosures on all transitions for all NFA nodes contained in the DFA node and
-     * adding them to a set of NFA Nodes that either matches a contained set NFA nodes in an existing DFA, or a new DFA
-     * node is created with the the contained NFA nodes being that set, and added to the DFA tree. The param DFA node
-     * then adds a transition to that node.  This is done for all chars in a language.  If no contained NFA nodes transition to a
-     * character, a traqnsition is added from the DFA node to the Null DFA state for that character.
-     * @param dfaNode
+     * This method takes in a dfa node, and makes all the connections for each character in the regex alphabet to other dfa nodes.
+     * The step is done once for each byte interval, and the transition it finds is added for every byte in the interval.
+     * It accomplishes this by ORing together the epsilon closures of every transition on the character out of the NFA nodes
+     * contained in the DFA node, which gives a set of NFA Nodes that either matches a contained set NFA nodes in an existing
+     * DFA, or a new DFA node is created with the the contained NFA nodes being that set, added to the DFA tree and queued to
+     * have its own connections made. The param DFA node then adds a transition to that node.  This is done for all chars in
+     * the alphabet. If no contained NFA nodes transition to a character, a traqnsition is added from the DFA node to the Null
+     * DFA state for that character.  Bytes that are not in the regex have no transition at all, and the compiled dfa puts
+     * every one of them in a single byte class that goes to the termination state
+     * @param dfaNode the DFA node getting its transitions
+     * @param dfaSet bitset of the NFA states contained in the DFA node
      */
-    private void nfaToDfaConnectionMaker(FiniteAutomataNode dfaNode)
+    private void nfaToDfaConnectionMaker(FiniteAutomataNode dfaNode, long[] dfaSet)
     {
-        //Character set of all Characters in the language
-        HashSet<Character> languageLeftover = new HashSet<>(Grep.getLanguage());
-
-        //Loop for each character that should transition out of the dfa node, based on all transitions out of the contained nfa nodes
-        for(Character c : dfaNode.getContainedKeys())
+        int steps = 0;
+        for(int k = 0; k < intervalMasks.length; k++)
         {
-            //Removes the node from the language, because there is a transition for it, and transition to null state doesn;t need to happen for that character
-            languageLeftover.remove(c);
+            if(intervalMasks[k] == null)
+                continue;
+            steps++;
+            int c = byteIntervals[k];
 
             //This is the set of all nfa nodes that can be reached on from a transition on a particular character
-            HashSet<FiniteAutomataNode> nodeReachedOnChar = new HashSet<>();
+            long[] reachedOnChar = new long[indexedNfa.getWords()];
+            FiniteAutomataNode target;
 
-            //Loops through all NFA nodes contained within DFA node
-            for(FiniteAutomataNode fan : dfaNode.getDfaContains())
-            {
-                //If this NFA node transitions to the current char c, add the epsilon enclosure of the destination node to the set of nodes that the dfa node transitions to
-                if(fan.hasKey(c))
-                    nodeReachedOnChar.addAll(epsilonClosure(fan.getMappedValue(c)));
-            }
-
-            //If the dfaTree already contains a DFA node with those contained NFA nodes, add transition from current DFA Node to that existing DFA node on currrent char
-            if(dfaTree.containsNode(nodeReachedOnChar))
+            //For every character where there were no transitions to other DFA nodes, make transitions to the null state dfa node
+            if(! indexedNfa.step(dfaSet, intervalMasks[k], c, reachedOnChar, stats))
+                target = dfaTree.getNullState();
+            else
             {
-                dfaNode.addCharactertransition(c, dfaTree.getEquivalentDfa(nodeReachedOnChar));
-            }
-            //Otherwise, make a new DFA Node with the contained NFA nodes being the reached on char nodes, and transition from current DFA node to newly created dfa node on current char
-            else {
-                FiniteAutomataNode newNode = new FiniteAutomataNode(nodeReachedOnChar);
-                dfaTree.addNode(newNode);
-                dfaNode.addCharactertransition(c, newNode);
+                //If the dfaTree already contains a DFA node with those contained NFA nodes, the transition goes to that existing DFA node
+                BitSet key = BitSet.valueOf(reachedOnChar);
+                target = dfaStates.get(key);
+                //Otherwise, make a new DFA Node with the contained NFA nodes being the reached on char nodes, and transition to that
+                if(target == null)
+                {
+                    target = new FiniteAutomataNode(containedNodes(reachedOnChar));
+                    dfaTree.addNode(target);
+                    dfaStates.put(key, target);
+                    uncheckedDfaNodes.add(target);
+                    uncheckedDfaSets.add(reachedOnChar);
+                }
             }
-
+            for(int b = c; b < byteIntervals[k + 1]; b++)
+                dfaNode.addCharactertransition((char) b, target);
         }
-
-        //For every character where there were no transitions to other DFA nodes, make transitions to the null state dfa node
-        for(Character c: languageLeftover)
-            dfaNode.addCharactertransition(c, dfaTree.getNullState());
+        stats.addSubsetSteps(steps);
         dfaNode.setDfaChecked(true);
 
 
     }
 
-
     /**
-     * This is the ever important method that takes a destination nfa node as a parameter, and returns a set of all nfa nodes that
-     * can be reached via epsilon closure from that node, which includes recursively finding the epsilon closure for all
-     * nodes reached on the previous iteration of epsilon closure.  There can be no infinite loops in this implementation of
-     * NFA nodes and trees because of the canonical way nfas are built and the fact that sets are used to store transitions
-     * nodes
-     * @param node is the node being epsilon closed
-     * @return set of nodes that is reachable via epsilon closure fot the given node
+     * Turns a bitset of NFA states back into the set of NFA nodes, which the DFA node keeps for its name and accept state
+     * @param set bitset of NFA state numbers from the indexed nfa
+     * @return set of NFA nodes
      */
-    private HashSet<FiniteAutomataNode> epsilonClosure(FiniteAutomataNode node)
+    private HashSet<FiniteAutomataNode> containedNodes(long[] set)
     {
-        //set of all nodes reached
-        HashSet<FiniteAutomataNode> temp = new HashSet<>();
-
-        //Add self node to group, because this method should always at least return set containing originally called node
-        temp.add(node);
-
-        //Loop through all nodes that can be reached b yepsilon transition from current node
-        for(FiniteAutomataNode fan : node.getEpsilonTransitions())
+        HashSet<FiniteAutomataNode> nodes = new HashSet<>();
+        for(int w = 0; w < set.length; w++)
         {
-
-            //For every node reachable via epsilon, add epsilon closure of the themselves to current list
-            temp.addAll(epsilonClosure(fan));
-        }
-
-        //return set of all reachable nodes
-        return temp;
-    }
-
-
-
-
-
-
-
-
-    /**
-     * Helper method to turn string into ArrayList of Characters for simpler parsing, and use of built in list iterators
-     * @param s is the raw regex string
-     * @return ArrayList of Characters in
-     */
-    private  ArrayList charToObject(String s)
-    {
-        char cArray[] = s.toCharArray();
-        ArrayList<Character> cObjects = new ArrayList<>(cArray.length);
-        for(char c : cArray)
-        {
-            cObjects.add(c);
+            long bits = set[w];
+            while(bits != 0)
+            {
+                nodes.add(indexedNfa.getNode((w << 6) + Long.numberOfTrailingZeros(bits)));
+                bits &= bits - 1;
+            }
         }
-        return cObjects;
+        return nodes;
     }
 
 }
@@ -0,0 +1,207 @@
+package graphex;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * This is the compiled form of a regex, for using the matching engines as a library instead of through Grep.  A pattern is
+ * compiled once with compile, and from then on nothing in it ever changes, so one pattern can be shared by any number of
+ * threads without locking.  Matching is done by a Matcher, which each thread gets from matcher.  The compiled dfa table
+ * and the numbered nfa are shared by all the matchers of a pattern, so a matcher only holds what changes while it runs,
+ * which for the compiled dfa is nothing at all.  Only the engines and a copy of the compile stats are kept, all of which
+ * are never changed once built; the parser and the nfa and dfa trees it built along the way are let go of as soon as the
+ * pattern is compiled.  No static state is used anywhere, so any number of patterns can be compiled and used in the
+ * same program at once
+ * @author Ryan Bertsche
+ */
+public final class Pattern
+{
+    //The regexes the pattern was compiled from, a single one unless it was compiled from a list
+    private final List<String> regexes;
+
+    //Copy of the options the pattern was compiled with
+    private final CompileOptions options;
+
+    //The dfa as a transition table, null if it was not built or had more states than the limit
+    private final CompiledDfa compiledDfa;
+
+    //Numbered nfa the nfa simulator runs on when there is no dfa, without the nodes of the nfa tree
+    private final IndexedNfa indexedNfa;
+
+    //Search for the literal every matching line contains, null if the regex has none
+    private final LiteralPrefilter prefilter;
+
+    //Copy of the measurements taken while compiling
+    private final CompileStats stats;
+
+    /**
+     * Constructor that compiles the regexes, only called by compile
+     * @param regexes the regexes, at least one
+     * @param options options to compile them with, which are copied
+     * @param inspector callback that is handed the parser once it is done, or null
+     */
+    private Pattern(List<String> regexes, CompileOptions options, Consumer<Parser> inspector)
+    {
+        this.regexes = Collections.unmodifiableList(regexes);
+        this.options = new CompileOptions(options);
+        Parser parser = new Parser(regexes, new CompileOptions(options));
+        if(parser.getDfaTree() == null)
+            compiledDfa = null;
+        else if(regexes.size() > 1)
+            compiledDfa = new CompiledDfa(parser.getDfaTree(), parser::getPatternIds);
+        else
+            compiledDfa = new CompiledDfa(parser.getDfaTree());
+        indexedNfa = parser.getIndexedNfa().withoutNodes();
+        prefilter = parser.getPrefilter();
+        stats = new CompileStats(parser.getStats());
+        if(inspector != null)
+            inspector.accept(parser);
+    }
+
+    /**
+     * Compiles a regex with the default options
+     * @param regex the regex
+     * @return the compiled pattern
+     */
+    public static Pattern compile(String regex)
+    {
+        return compile(regex, new CompileOptions());
+    }
+
+    /**
+     * Compiles a regex.  The options are copied, so changing them afterwards does not change the pattern
+     * @param regex the regex
+     * @param options options to compile it with
+     * @return the compiled pattern
+     */
+    public static Pattern compile(String regex, CompileOptions options)
+    {
+        return new Pattern(Collections.singletonList(regex), options, null);
+    }
+
+    /**
+     * Compiles a list of regexes into one pattern that matches a line if any of them does.  The dfa of the pattern keeps
+     * track of which regexes each line matched, which CompiledDfa.matchedPatterns gives back
+     * @param regexes the regexes, at least one
+     * @param options options to compile them with
+     * @return the compiled pattern
+     */
+    public static Pattern compile(List<String> regexes, CompileOptions options)
+    {
+        return compile(regexes, options, null);
+    }
+
+    /**
+     * Compiles a list of regexes, and hands the parser that built them to a callback before it is let go of.  Only Grep
+     * uses this, to print the nfa and dfa trees with '-n' and '-d' and the minimized state counts with '-m', which the
+     * pattern itself does not keep
+     * @param regexes the regexes, at least one
+     * @param options options to compile them with
+     * @param inspector callback that is handed the parser once it is done, or null
+     * @return the compiled pattern
+     */
+    static Pattern compile(List<String> regexes, CompileOptions options, Consumer<Parser> inspector)
+    {
+        if(regexes.isEmpty())
+            throw new Error("A pattern needs at least one regex.");
+        return new Pattern(List.copyOf(regexes), options, inspector);
+    }
+
+    /**
+     * Makes a matcher for this pattern.  It is cheap to make, and is meant for one thread; every thread that matches
+     * should get its own.  The engine is the compiled dfa if it was built, and the nfa simulator otherwise, behind the
+     * literal prefilter if the regex has one
+     * @return a new matcher
+     */
+    public Matcher matcher()
+    {
+        LineMatcher engine = compiledDfa != null ? compiledDfa : new NfaSimulator(indexedNfa);
+        if(prefilter != null)
+            engine = new PrefilteredMatcher(engine, prefilter);
+        return new Matcher(this, engine);
+    }
+
+    /**
+     * Checks if an entire line matches, with a matcher made just for this call
+     * @param line the line to check
+     * @return true if the line is in the language of the regex
+     */
+    public boolean matches(String line)
+    {
+        return matcher().matches(line);
+    }
+
+    /**
+     * Getter for the regex of the pattern
+     * @return the regex, or the regexes joined by line breaks if there is more than one
+     */
+    public String pattern()
+    {
+        return String.join("\n", regexes);
+    }
+
+    /**
+     * Getter for the regexes the pattern was compiled from
+     * @return unmodifiable list of the regexes
+     */
+    public List<String> getRegexes()
+    {
+        return regexes;
+    }
+
+    /**
+     * Getter for the options the pattern was compiled with.  A copy is given out, so the pattern can not be changed through it
+     * @return copy of the compile options
+     */
+    public CompileOptions getOptions()
+    {
+        return new CompileOptions(options);
+    }
+
+    /**
+     * Getter for the measurements taken while the pattern was compiled
+     * @return the compile stats
+     */
+    public CompileStats getStats()
+    {
+        return stats;
+    }
+
+    /**
+     * Getter for the compiled dfa
+     * @return the dfa table, or null if the dfa was not built or was over the state limit
+     */
+    public CompiledDfa getCompiledDfa()
+    {
+        return compiledDfa;
+    }
+
+    /**
+     * Getter for the numbered nfa, which the lazy dfa, the nfa simulator and the searcher are built from
+     * @return the indexed nfa
+     */
+    public IndexedNfa getIndexedNfa()
+    {
+        return indexedNfa;
+    }
+
+    /**
+     * Getter for the literal prefilter
+     * @return the prefilter, or null if the regex has no literal every match contains
+     */
+    public LiteralPrefilter getPrefilter()
+    {
+        return prefilter;
+    }
+
+    /**
+     * Gives the regex as the string form of the pattern
+     * @return the regex
+     */
+    @Override
+    public String toString()
+    {
+        return pattern();
+    }
+}
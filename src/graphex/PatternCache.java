@@ -0,0 +1,209 @@
+package graphex;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * This class keeps compiled regexes around so a program that uses the same few patterns over and over only compiles
+ * each one once.  Compiled patterns are kept by pattern text and compile options in a map in least recently used order,
+ * and when the map is over its size the pattern used longest ago is thrown out.  If several threads ask for the same
+ * pattern that is not cached yet, only the first one compiles it and the rest wait for its result.  It is safe to use
+ * from any number of threads at once.  A Pattern is never changed after it is compiled, so the same one can be handed to
+ * every caller, and each caller gets its own Matcher from it
+ * @author Ryan Bertsche
+ */
+public class PatternCache
+{
+    //Number of compiled patterns kept if no size is given
+    public static final int DEFAULT_MAX_SIZE = 128;
+
+    //Largest number of compiled patterns kept
+    private final int maxSize;
+
+    //The compiled patterns in least recently used order.  A pattern that is still being compiled is in here already, so
+    //threads that ask for it while it is compiling wait on the same task
+    private final LinkedHashMap<Key, FutureTask<Pattern>> compiled;
+
+    //Counters for patterns that were found in the cache, patterns that had to be compiled, and patterns thrown out
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructor for a cache of the default size
+     */
+    public PatternCache()
+    {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructor for a cache of a given size
+     * @param maxSize largest number of compiled patterns kept, at least 1
+     */
+    public PatternCache(int maxSize)
+    {
+        if(maxSize < 1)
+            throw new Error("The pattern cache must hold at least 1 pattern.");
+        this.maxSize = maxSize;
+        compiled = new LinkedHashMap<Key, FutureTask<Pattern>>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, FutureTask<Pattern>> eldest)
+            {
+                if(size() <= PatternCache.this.maxSize)
+                    return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gets the compiled form of a regex with the default options
+     * @param regex the regex
+     * @return the compiled pattern
+     */
+    public Pattern get(String regex)
+    {
+        return get(regex, new CompileOptions());
+    }
+
+    /**
+     * Gets the compiled form of a regex, compiling it first if it is not in the cache.  The options are copied, so
+     * changing them afterwards does not change what is cached
+     * @param regex the regex
+     * @param options options to compile it with
+     * @return the compiled pattern
+     */
+    public Pattern get(String regex, CompileOptions options)
+    {
+        Key key = new Key(regex, new CompileOptions(options));
+        FutureTask<Pattern> task;
+        boolean compileHere = false;
+        synchronized(this)
+        {
+            task = compiled.get(key);
+            if(task != null)
+                hits++;
+            else
+            {
+                misses++;
+                task = new FutureTask<>(() -> Pattern.compile(key.regex, key.options));
+                compiled.put(key, task);
+                compileHere = true;
+            }
+        }
+        //The compile runs outside of the lock, so other patterns can be looked up while it runs
+        if(compileHere)
+            task.run();
+        try {
+            return task.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Error("Interrupted while waiting for a pattern to compile.");
+        }
+        catch (ExecutionException e) {
+            //A pattern that did not compile is not kept, so it is tried again the next time it is asked for
+            synchronized(this)
+            {
+                compiled.remove(key, task);
+            }
+            if(e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new Error("There was an error compiling the regex " + regex, e.getCause());
+        }
+    }
+
+    /**
+     * Throws out every cached pattern.  The counters are kept
+     */
+    public synchronized void clear()
+    {
+        compiled.clear();
+    }
+
+    /**
+     * Getter for the number of patterns in the cache right now
+     * @return number of cached patterns, including ones still compiling
+     */
+    public synchronized int size()
+    {
+        return compiled.size();
+    }
+
+    /**
+     * Getter for the number of times a pattern was already in the cache
+     * @return cache hit count
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Getter for the number of times a pattern had to be compiled
+     * @return cache miss count
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Getter for the number of patterns thrown out to make room for others
+     * @return eviction count
+     */
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    /**
+     * The key patterns are cached by, which is the regex text and the options it was compiled with
+     */
+    private static class Key
+    {
+        //The regex and its options
+        final String regex;
+        final CompileOptions options;
+
+        /**
+         * Constructor for a key
+         * @param regex the regex
+         * @param options options the regex is compiled with, which must not be changed afterwards
+         */
+        Key(String regex, CompileOptions options)
+        {
+            this.regex = regex;
+            this.options = options;
+        }
+
+        /**
+         * Keys are equal if both the regex and the options are
+         * @param o the other object
+         * @return true if the keys are equal
+         */
+        @Override
+        public boolean equals(Object o)
+        {
+            if(!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return regex.equals(other.regex) && options.equals(other.options);
+        }
+
+        /**
+         * Hash code that agrees with equals
+         * @return hash of the regex and options
+         */
+        @Override
+        public int hashCode()
+        {
+            return 31 * regex.hashCode() + options.hashCode();
+        }
+    }
+}
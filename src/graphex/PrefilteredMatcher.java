@@ -0,0 +1,169 @@
+package graphex;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This is a matcher that puts a literal prefilter in front of another engine.  Instead of running every line through the
+ * engine, the scan searches ahead for the literal every matching line must contain, and only the lines the literal turns
+ * up in are run through the engine.  All the lines in between are skipped at the speed of the literal search.  It keeps
+ * no state of its own, so it is safe to share between threads whenever the engine it wraps is
+ * @author Ryan Bertsche
+ */
+public class PrefilteredMatcher implements LineMatcher
+{
+    //The engine that decides the candidate lines
+    private final LineMatcher engine;
+
+    //The literal search that finds the candidate lines
+    private final LiteralPrefilter prefilter;
+
+    //True if the engine matches whole lines, so a line can also be thrown out by its first byte
+    private final boolean wholeLine;
+
+    /**
+     * Constructor for a prefiltered matcher in front of an engine that matches whole lines
+     * @param engine engine that decides the lines the literal is found in
+     * @param prefilter literal search for the regex the engine was built from
+     */
+    public PrefilteredMatcher(LineMatcher engine, LiteralPrefilter prefilter)
+    {
+        this(engine, prefilter, true);
+    }
+
+    /**
+     * Constructor for a prefiltered matcher
+     * @param engine engine that decides the lines the literal is found in
+     * @param prefilter literal search for the regex the engine was built from
+     * @param wholeLine true if the engine matches whole lines, false if it searches for a match inside the line
+     */
+    public PrefilteredMatcher(LineMatcher engine, LiteralPrefilter prefilter, boolean wholeLine)
+    {
+        this.engine = engine;
+        this.prefilter = prefilter;
+        this.wholeLine = wholeLine;
+    }
+
+    /**
+     * Getter for the engine behind the prefilter
+     * @return the wrapped engine
+     */
+    public LineMatcher getEngine()
+    {
+        return engine;
+    }
+
+    /**
+     * Checks if the entire line is in the language of the regex, only running the engine if the literal is in the line
+     * @param line is a String of a single line to be checked for a match
+     * @return true if the line matches
+     */
+    public boolean matches(String line)
+    {
+        return prefilter.contains(line) && engine.matches(line);
+    }
+
+    /**
+     * Checks if one line in a buffer is in the language of the regex, only running the engine if the literal is in the line
+     * @param buf buffer holding the line
+     * @param from index of the first byte of the line
+     * @param to index one past the last byte of the line
+     * @return true if the line matches
+     */
+    public boolean matches(ByteBuffer buf, int from, int to)
+    {
+        return canStart(buf, from, to) && prefilter.contains(buf, from, to) && engine.matches(buf, from, to);
+    }
+
+    /**
+     * Scans the lines of a range by jumping from one occurrence of the literal to the next.  The line around each
+     * occurrence is found by looking back and forward for line breaks, and is run through the engine.  Lines are split
+     * the same way as the plain scan, and the same unfinished line is returned.  If the handler is done after a matching
+     * line, the scan stops there
+     * @param buf buffer holding the input
+     * @param from index of the first byte to scan, which must be the start of a line
+     * @param to index one past the last byte to scan
+     * @param endOfInput true if there is no more input after this range
+     * @param handler callback for matching lines
+     * @return index of the start of the unfinished line, or to if every line in the range was finished, or the start of the
+     * line after the last one handed over if the handler is done
+     */
+    @Override
+    public int scanLines(ByteBuffer buf, int from, int to, boolean endOfInput, LineHandler handler)
+    {
+        int position = from;
+        while(position < to)
+        {
+            int found = prefilter.indexOf(buf, position, to);
+            if(found < 0)
+                return endOfInput ? to : lastLineStart(buf, position, to);
+
+            int lineStart = found;
+            while(lineStart > position && !isLineBreak(buf.get(lineStart - 1)))
+                lineStart--;
+            int lineEnd = found;
+            while(lineEnd < to && !isLineBreak(buf.get(lineEnd)))
+                lineEnd++;
+
+            if(lineEnd == to)
+            {
+                if(!endOfInput)
+                    return lineStart;
+                if(canStart(buf, lineStart, lineEnd) && engine.matches(buf, lineStart, lineEnd))
+                    handler.matchedLine(buf, lineStart, lineEnd);
+                return to;
+            }
+            //A '\r' at the end of the range could be the first half of a "\r\n" that is not here yet
+            if(buf.get(lineEnd) == '\r' && lineEnd + 1 == to && !endOfInput)
+                return lineStart;
+            boolean matched = canStart(buf, lineStart, lineEnd) && engine.matches(buf, lineStart, lineEnd);
+            if(matched)
+                handler.matchedLine(buf, lineStart, lineEnd);
+            if(buf.get(lineEnd) == '\r' && lineEnd + 1 < to && buf.get(lineEnd + 1) == '\n')
+                lineEnd++;
+            position = lineEnd + 1;
+            if(matched && handler.isDone())
+                return position;
+        }
+        return to;
+    }
+
+    /**
+     * Checks the first byte of a line against the bytes a match can start with, when the engine matches whole lines
+     * @param buf buffer holding the line
+     * @param from index of the first byte of the line
+     * @param to index one past the last byte of the line
+     * @return false if the line is sure not to match
+     */
+    private boolean canStart(ByteBuffer buf, int from, int to)
+    {
+        return !wholeLine || prefilter.canStart(buf, from, to);
+    }
+
+    /**
+     * Finds where the last line of a range starts, which is where a scan that is not at the end of the input has to pick
+     * up again.  A '\r' at the very end is not counted as a line break, since a '\n' could still come after it
+     * @param buf buffer holding the input
+     * @param from index of the start of a line
+     * @param to index one past the last byte of the range
+     * @return index of the start of the last line
+     */
+    private static int lastLineStart(ByteBuffer buf, int from, int to)
+    {
+        int i = to;
+        if(i > from && buf.get(i - 1) == '\r')
+            i--;
+        while(i > from && !isLineBreak(buf.get(i - 1)))
+            i--;
+        return i;
+    }
+
+    /**
+     * Checks if a byte ends a line
+     * @param b the byte
+     * @return true for '\n' and '\r'
+     */
+    private static boolean isLineBreak(byte b)
+    {
+        return b == '\n' || b == '\r';
+    }
+}
@@ -0,0 +1,182 @@
+package graphex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * This is a node of the parsed regex.  The parser builds a tree of these first, and the automata and the literal
+ * analysis are both made from the tree.  A node is a single character, a class of bytes given as ranges, a concatenation
+ * or union of its children, or the Kleene closure of its one child.  Concatenations and unions hold all their operands in one list, so a long run of
+ * characters is one node with many children rather than a deep chain of nodes.  Trees are walked with fold, which uses an
+ * explicit stack, so even a very deeply nested regex can not overflow the call stack.  Nodes are never changed once made
+ * @author Ryan Bertsche
+ */
+public class RegexNode
+{
+    /**
+     * The kinds of regex nodes
+     */
+    public enum Kind
+    {
+        CHAR, CLASS, CONCAT, UNION, STAR
+    }
+
+    //What kind of node this is
+    private final Kind kind;
+
+    //The character, only used by CHAR nodes
+    private final char character;
+
+    //The bytes the node matches one of, only used by CLASS nodes
+    private final ByteRanges ranges;
+
+    //The operands, empty for CHAR and CLASS nodes and a single child for STAR nodes
+    private final List<RegexNode> children;
+
+    /**
+     * Constructor used by the factory methods
+     * @param kind kind of node
+     * @param character the character for CHAR nodes
+     * @param ranges the bytes for CLASS nodes
+     * @param children the operands
+     */
+    private RegexNode(Kind kind, char character, ByteRanges ranges, List<RegexNode> children)
+    {
+        this.kind = kind;
+        this.character = character;
+        this.ranges = ranges;
+        this.children = Collections.unmodifiableList(children);
+    }
+
+    /**
+     * Makes a node for a single character
+     * @param c the character
+     * @return CHAR node
+     */
+    public static RegexNode literal(char c)
+    {
+        return new RegexNode(Kind.CHAR, c, null, new ArrayList<RegexNode>());
+    }
+
+    /**
+     * Makes a node that matches any single byte of a set
+     * @param ranges the bytes
+     * @return CLASS node
+     */
+    public static RegexNode byteClass(ByteRanges ranges)
+    {
+        return new RegexNode(Kind.CLASS, '\0', ranges, new ArrayList<RegexNode>());
+    }
+
+    /**
+     * Makes the concatenation of a list of nodes
+     * @param operands nodes matched one after the other, at least one
+     * @return CONCAT node, or the node itself if there is only one
+     */
+    public static RegexNode concat(List<RegexNode> operands)
+    {
+        if(operands.size() == 1)
+            return operands.get(0);
+        return new RegexNode(Kind.CONCAT, '\0', null, new ArrayList<>(operands));
+    }
+
+    /**
+     * Makes the union of a list of nodes
+     * @param operands the options, at least one
+     * @return UNION node, or the node itself if there is only one
+     */
+    public static RegexNode union(List<RegexNode> operands)
+    {
+        if(operands.size() == 1)
+            return operands.get(0);
+        return new RegexNode(Kind.UNION, '\0', null, new ArrayList<>(operands));
+    }
+
+    /**
+     * Makes the Kleene closure of a node
+     * @param child node that is repeated
+     * @return STAR node
+     */
+    public static RegexNode star(RegexNode child)
+    {
+        List<RegexNode> children = new ArrayList<>();
+        children.add(child);
+        return new RegexNode(Kind.STAR, '\0', null, children);
+    }
+
+    /**
+     * Works out a value for every node of the tree from the values of its children, children first, and returns the value
+     * of this node.  The walk keeps its own stack instead of recursing, so the depth of the tree does not matter
+     * @param combine makes the value of a node from the node and the values of its children, in order
+     * @param <T> type of the values
+     * @return the value of this node
+     */
+    public <T> T fold(BiFunction<RegexNode, List<T>, T> combine)
+    {
+        ArrayList<RegexNode> path = new ArrayList<>();
+        ArrayList<Integer> nextChild = new ArrayList<>();
+        ArrayList<T> values = new ArrayList<>();
+        path.add(this);
+        nextChild.add(0);
+        while(!path.isEmpty())
+        {
+            int top = path.size() - 1;
+            RegexNode node = path.get(top);
+            int child = nextChild.get(top);
+            if(child < node.children.size())
+            {
+                nextChild.set(top, child + 1);
+                path.add(node.children.get(child));
+                nextChild.add(0);
+            }
+            else
+            {
+                path.remove(top);
+                nextChild.remove(top);
+                List<T> childValues = values.subList(values.size() - node.children.size(), values.size());
+                T value = combine.apply(node, new ArrayList<>(childValues));
+                childValues.clear();
+                values.add(value);
+            }
+        }
+        return values.get(0);
+    }
+
+    /**
+     * Getter for the kind of node
+     * @return kind
+     */
+    public Kind getKind()
+    {
+        return kind;
+    }
+
+    /**
+     * Getter for the character of a CHAR node
+     * @return the character
+     */
+    public char getCharacter()
+    {
+        return character;
+    }
+
+    /**
+     * Getter for the bytes of a CLASS node
+     * @return the byte ranges
+     */
+    public ByteRanges getRanges()
+    {
+        return ranges;
+    }
+
+    /**
+     * Getter for the operands
+     * @return unmodifiable list of children
+     */
+    public List<RegexNode> getChildren()
+    {
+        return children;
+    }
+}
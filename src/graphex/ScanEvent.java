@@ -0,0 +1,40 @@
+package graphex;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Frequency;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for a whole scan of the input.  The event's own duration is the wall time of the scan, and the
+ * fields hold the counters the scan kept
+ * @author Ryan Bertsche
+ */
+@Name("graphex.Scan")
+@Label("Regex Scan")
+@Category("Graphex")
+@Description("Matching the input against a compiled regex")
+public class ScanEvent extends Event
+{
+    //Number of input bytes the engines went through
+    @Label("Bytes Scanned")
+    @DataAmount
+    long bytes;
+
+    //Number of lines in those bytes
+    @Label("Lines Scanned")
+    long lines;
+
+    //Number of lines that matched
+    @Label("Lines Matched")
+    long matchedLines;
+
+    //Bytes scanned per second of wall time
+    @Label("Throughput")
+    @DataAmount(DataAmount.BYTES)
+    @Frequency
+    double bytesPerSecond;
+}
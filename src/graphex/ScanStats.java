@@ -0,0 +1,143 @@
+package graphex;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts what a scan of the input did: the bytes and lines the engines went through and the lines that
+ * matched.  The counters can be added to from any number of threads at once, so one of these covers a whole parallel or
+ * multi file run.  When the scan is done it is sent out as a flight recorder event
+ * @author Ryan Bertsche
+ */
+public class ScanStats
+{
+    //Counters for bytes scanned, lines scanned and lines matched
+    private final LongAdder bytes;
+    private final LongAdder lines;
+    private final LongAdder matchedLines;
+
+    //True if line breaks are counted, which takes a second look at every byte so it is only done when asked for
+    private final boolean countLines;
+
+    //Event for the scan, started when the stats are made
+    private final ScanEvent event;
+
+    //Start time of the scan, and its wall time once it is finished
+    private final long start;
+    private long nanos;
+
+    /**
+     * Constructor that starts the scan clock
+     * @param countLines true to count every line scanned, not just the matching ones
+     */
+    public ScanStats(boolean countLines)
+    {
+        bytes = new LongAdder();
+        lines = new LongAdder();
+        matchedLines = new LongAdder();
+        event = new ScanEvent();
+        this.countLines = countLines || event.isEnabled();
+        event.begin();
+        start = System.nanoTime();
+    }
+
+    /**
+     * Adds a scanned range to the counters
+     * @param buf buffer holding the input
+     * @param from index of the first byte scanned
+     * @param to index one past the last byte scanned
+     */
+    void addScanned(ByteBuffer buf, int from, int to)
+    {
+        bytes.add(to - from);
+        if(!countLines)
+            return;
+        long count = 0;
+        for(int i = from; i < to; i++)
+        {
+            byte b = buf.get(i);
+            if(b == '\n' || (b == '\r' && (i + 1 == to || buf.get(i + 1) != '\n')))
+                count++;
+        }
+        //A last line with no line break after it is still a line
+        if(to > from)
+        {
+            byte last = buf.get(to - 1);
+            if(last != '\n' && last != '\r')
+                count++;
+        }
+        lines.add(count);
+    }
+
+    /**
+     * Counts one matching line
+     */
+    void addMatched()
+    {
+        matchedLines.increment();
+    }
+
+    /**
+     * Stops the scan clock and commits the event
+     */
+    public void finish()
+    {
+        nanos = System.nanoTime() - start;
+        event.end();
+        if(event.shouldCommit())
+        {
+            event.bytes = bytes.sum();
+            event.lines = lines.sum();
+            event.matchedLines = matchedLines.sum();
+            event.bytesPerSecond = getBytesPerSecond();
+            event.commit();
+        }
+    }
+
+    /**
+     * Getter for the number of bytes scanned
+     * @return byte count
+     */
+    public long getBytes()
+    {
+        return bytes.sum();
+    }
+
+    /**
+     * Getter for the number of lines scanned
+     * @return line count, 0 if lines were not counted
+     */
+    public long getLines()
+    {
+        return lines.sum();
+    }
+
+    /**
+     * Getter for the number of lines that matched
+     * @return matched line count
+     */
+    public long getMatchedLines()
+    {
+        return matchedLines.sum();
+    }
+
+    /**
+     * Getter for the scan throughput
+     * @return bytes scanned per second of wall time, up to the finish or up to now if it is not finished
+     */
+    public double getBytesPerSecond()
+    {
+        long elapsed = nanos > 0 ? nanos : System.nanoTime() - start;
+        return elapsed == 0 ? 0 : bytes.sum() / (elapsed / 1e9);
+    }
+
+    /**
+     * Makes a short readable summary of the counters
+     * @return the summary
+     */
+    public String summary()
+    {
+        return String.format("%-10s %10.3f ms%nbytes %d, lines %d, matched %d, %.1f MB/s%n", "scan", nanos / 1e6,
+                getBytes(), getLines(), getMatchedLines(), getBytesPerSecond() / (1 << 20));
+    }
+}
@@ -0,0 +1,190 @@
+package graphex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * This is a matcher for input that comes in pieces, like standard input or a pipe, where the whole input can not be
+ * mapped the way a file is.  The pieces are fed in with feed as they are read, and finish is called at the end of the
+ * input.  Every matching line is handed to the handler as soon as the piece that finishes it is fed.  The lines are only
+ * run through the engine once their line break has come in, and only up to the last line break, so a line that is not
+ * finished by the end of a piece is kept in the buffer and not looked at again until the rest of it comes in.  The new
+ * bytes of every piece are searched for a line break once, so a very long line fed in many small pieces is still read in
+ * time that grows with its length, not with its length squared.  Lines end at '\n', '\r' or "\r\n", the same as for
+ * scanLines, and a '\r' at the very end of what has come in is held back until the next piece shows whether a '\n'
+ * follows it, so a "\r\n" split between two pieces is still one line break.  The matcher only ever holds the unfinished line and
+ * the piece being scanned, and the buffer is only made bigger for a line that does not fit in it.  It is not safe to
+ * share between threads
+ * @author Ryan Bertsche
+ */
+public class StreamMatcher
+{
+    //Size of the buffer if no size is given
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    //The engine the lines are matched with
+    private final LineMatcher matcher;
+
+    //Callback for matching lines
+    private final LineHandler handler;
+
+    //Holds the unfinished line at the start, followed by the input that has not been scanned yet
+    private ByteBuffer buffer;
+
+    //Number of bytes in the buffer
+    private int filled;
+
+    //Number of bytes at the start of the buffer that are already known to have no line break after the unfinished line
+    private int searched;
+
+    //True once the handler is done or finish has been called, after which input is ignored
+    private boolean finished;
+
+    /**
+     * Constructor for a stream matcher with the default buffer size
+     * @param matcher engine to match the lines with
+     * @param handler callback for matching lines
+     */
+    public StreamMatcher(LineMatcher matcher, LineHandler handler)
+    {
+        this(matcher, handler, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor for a stream matcher
+     * @param matcher engine to match the lines with
+     * @param handler callback for matching lines
+     * @param bufferSize starting size of the buffer in bytes, which is also the most that is read from a stream at once
+     */
+    public StreamMatcher(LineMatcher matcher, LineHandler handler, int bufferSize)
+    {
+        if(bufferSize < 1)
+            throw new Error("The stream buffer must hold at least 1 byte.");
+        this.matcher = matcher;
+        this.handler = handler;
+        buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Matches the next piece of the input.  The bytes are copied, so the array can be reused for the next piece as soon as
+     * this returns
+     * @param bytes array holding the piece
+     * @param offset index of the first byte of the piece
+     * @param length number of bytes in the piece
+     */
+    public void feed(byte[] bytes, int offset, int length)
+    {
+        while(length > 0 && !finished)
+        {
+            if(filled == buffer.capacity())
+                grow();
+            int count = Math.min(length, buffer.capacity() - filled);
+            System.arraycopy(bytes, offset, buffer.array(), filled, count);
+            filled += count;
+            offset += count;
+            length -= count;
+            scan(false);
+        }
+    }
+
+    /**
+     * Reads a stream to its end and matches all of it, then finishes the input.  The stream is read straight into the
+     * buffer, so nothing is copied on the way.  Reading stops early if the handler is done.  The stream is not closed
+     * @param in the stream to read
+     * @throws IOException if the stream cannot be read
+     */
+    public void readAll(InputStream in) throws IOException
+    {
+        while(!finished)
+        {
+            if(filled == buffer.capacity())
+                grow();
+            int read = in.read(buffer.array(), filled, buffer.capacity() - filled);
+            if(read < 0)
+                break;
+            filled += read;
+            scan(false);
+        }
+        finish();
+    }
+
+    /**
+     * Ends the input.  The last line is matched even if it has no line break after it, and anything fed afterwards is
+     * ignored
+     */
+    public void finish()
+    {
+        if(!finished)
+            scan(true);
+        finished = true;
+        filled = 0;
+        searched = 0;
+    }
+
+    /**
+     * Checks if the matcher is taking no more input, either because finish was called or because the handler is done.
+     * A caller reading the input itself can stop reading once this is true
+     * @return true if any more input would be ignored
+     */
+    public boolean isFinished()
+    {
+        return finished;
+    }
+
+    /**
+     * Scans the finished lines in the buffer, then moves the unfinished line that is left to the start of the buffer.
+     * Before the end of the input only the bytes that came in since the last scan are searched for a line break, and if
+     * there is none nothing is scanned at all
+     * @param endOfInput true if there is no more input after what is in the buffer
+     */
+    private void scan(boolean endOfInput)
+    {
+        int to = filled;
+        if(!endOfInput)
+        {
+            byte[] bytes = buffer.array();
+            int lastBreak = filled - 1;
+            while(lastBreak >= searched && bytes[lastBreak] != '\n' && bytes[lastBreak] != '\r')
+                lastBreak--;
+            boolean found = lastBreak >= searched;
+            searched = filled;
+            if(!found)
+                return;
+            to = lastBreak + 1;
+            if(bytes[lastBreak] == '\r')
+            {
+                //A '\r' at the end could be the first half of a "\r\n", so scanLines stops before its line and it is
+                //searched again with the next piece.  Otherwise the byte after it, which is not a line break, is scanned
+                //too, so the '\r' is not the end of the range, where scanLines would hold it back as well
+                if(to == filled)
+                    searched = lastBreak;
+                else
+                    to++;
+            }
+        }
+        int done = matcher.scanLines(buffer, 0, to, endOfInput, handler);
+        if(handler.isDone())
+        {
+            finished = true;
+            filled = 0;
+            searched = 0;
+            return;
+        }
+        System.arraycopy(buffer.array(), done, buffer.array(), 0, filled - done);
+        filled -= done;
+        searched -= done;
+    }
+
+    /**
+     * Doubles the size of the buffer, for an unfinished line that fills all of it
+     */
+    private void grow()
+    {
+        if(buffer.capacity() > Integer.MAX_VALUE / 2)
+            throw new Error("FATAL ERROR, OPERATION ABORTED: A line in the input is longer than " + buffer.capacity() + " bytes.");
+        ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+        System.arraycopy(buffer.array(), 0, bigger.array(), 0, filled);
+        buffer = bigger;
+    }
+}
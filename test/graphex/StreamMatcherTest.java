@@ -0,0 +1,96 @@
+package graphex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks for feeding the stream matcher its input in pieces.  The same lines are joined with '\n', with '\r' and with
+ * "\r\n", and fed in pieces of every size from 1 to 7 bytes into a buffer much smaller than the input.  Every line but the
+ * last has to be handed over before finish is called, which is what keeps the memory of a stream bounded, and after
+ * finish the matching lines have to be exactly the ones the input splits into, with no extra empty line for a "\r\n"
+ * that is split between two pieces.  Run it with
+ * java graphex.StreamMatcherTest
+ * and it throws an Error at the first check that fails
+ * @author Ryan Bertsche
+ */
+public class StreamMatcherTest
+{
+    //Lines the input is made of, all of which match the regex except "x"
+    private static final String[] LINES = {"ab", "x", "ba", "", "abab"};
+
+    //Number of times the lines are repeated, so the input is many times the size of the buffer
+    private static final int REPEATS = 200;
+
+    //Starting size of the stream buffer, which no line comes close to filling
+    private static final int BUFFER_SIZE = 16;
+
+    /**
+     * Runs every check and prints how many passed
+     * @param args not used
+     */
+    public static void main(String args[])
+    {
+        LineMatcher matcher = Pattern.compile("(a|b)*").getCompiledDfa();
+        int checks = 0;
+        for(String separator : new String[]{"\n", "\r", "\r\n"})
+        {
+            for(int piece = 1; piece <= 7; piece++)
+            {
+                check(matcher, separator, piece);
+                checks++;
+            }
+        }
+        System.out.println(checks + " stream feed checks passed");
+    }
+
+    /**
+     * Feeds the lines joined with a separator in pieces of one size, and checks the lines handed over before and after
+     * finish
+     * @param matcher engine to match the lines with
+     * @param separator line break the lines are joined with
+     * @param piece number of bytes in every piece
+     */
+    private static void check(LineMatcher matcher, String separator, int piece)
+    {
+        StringBuilder text = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for(int r = 0; r < REPEATS; r++)
+        {
+            for(String line : LINES)
+            {
+                text.append(line).append(separator);
+                if(!line.equals("x"))
+                    expected.add(line);
+            }
+        }
+        byte[] input = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        List<String> matched = new ArrayList<>();
+        StreamMatcher stream = new StreamMatcher(matcher, (buf, start, end) -> matched.add(lineText(buf, start, end)), BUFFER_SIZE);
+        for(int offset = 0; offset < input.length; offset += piece)
+            stream.feed(input, offset, Math.min(piece, input.length - offset));
+        String name = "separator " + separator.replace("\r", "\\r").replace("\n", "\\n") + " in pieces of " + piece;
+        if(matched.size() < expected.size() - 1)
+            throw new Error(name + ": only " + matched.size() + " of " + expected.size() + " lines were handed over before finish.");
+        stream.finish();
+        if(!matched.equals(expected))
+            throw new Error(name + ": got " + matched.size() + " lines instead of " + expected.size() + ", or different ones.");
+    }
+
+    /**
+     * Copies a line out of a buffer as text
+     * @param buf buffer holding the line
+     * @param start index of the first byte of the line
+     * @param end index one past the last byte of the line
+     * @return the line
+     */
+    private static String lineText(ByteBuffer buf, int start, int end)
+    {
+        byte[] bytes = new byte[end - start];
+        for(int i = start; i < end; i++)
+            bytes[i - start] = buf.get(i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}